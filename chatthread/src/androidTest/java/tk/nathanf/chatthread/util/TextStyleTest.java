@@ -0,0 +1,137 @@
+package tk.nathanf.chatthread.util;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.graphics.Typeface;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented tests for {@link TextStyle}, checking that unchanged values are not set again.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TextStyleTest {
+    private CountingTextView textView;
+
+    @Before
+    public void setUp() {
+        textView = new CountingTextView(InstrumentationRegistry.getTargetContext());
+        textView.setLayoutParams(new ViewGroup.MarginLayoutParams(
+            ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT
+        ));
+        textView.reset();
+    }
+
+    @Test
+    public void setText_skipsUnchangedText() {
+        assertTrue(TextStyle.setText(textView, "Hello"));
+        assertEquals("Hello", textView.getText().toString());
+
+        // Equal content in a different instance is still unchanged.
+        assertFalse(TextStyle.setText(textView, new StringBuilder("Hello")));
+        assertTrue(TextStyle.setText(textView, "Hello, World"));
+        assertEquals("Hello, World", textView.getText().toString());
+    }
+
+    @Test
+    public void setTypeface_skipsUnchangedTypeface() {
+        TextStyle.setTypeface(textView, Typeface.MONOSPACE);
+        TextStyle.setTypeface(textView, Typeface.MONOSPACE);
+        assertEquals(1, textView.typefaceCount);
+
+        TextStyle.setTypeface(textView, Typeface.SERIF);
+        assertEquals(2, textView.typefaceCount);
+    }
+
+    @Test
+    public void setTextSizeSp_skipsUnchangedSize() {
+        TextStyle.setTextSizeSp(textView, 23);
+        TextStyle.setTextSizeSp(textView, 23);
+        assertEquals(1, textView.textSizeCount);
+
+        TextStyle.setTextSizeSp(textView, 24);
+        assertEquals(2, textView.textSizeCount);
+    }
+
+    @Test
+    public void setTextColor_skipsUnchangedColor() {
+        TextStyle.setTextColor(textView, Color.RED);
+        TextStyle.setTextColor(textView, Color.RED);
+        assertEquals(1, textView.textColorCount);
+
+        TextStyle.setTextColor(textView, Color.BLUE);
+        assertEquals(2, textView.textColorCount);
+    }
+
+    @Test
+    public void setMargins_skipsUnchangedMargins() {
+        TextStyle.setMargins(textView, 1, 2, 3, 4);
+        textView.reset();
+
+        TextStyle.setMargins(textView, 1, 2, 3, 4);
+        assertEquals(0, textView.layoutCount);
+
+        TextStyle.setMargins(textView, 1, 2, 3, 5);
+        assertEquals(1, textView.layoutCount);
+        ViewGroup.MarginLayoutParams params =
+            (ViewGroup.MarginLayoutParams) textView.getLayoutParams();
+        assertEquals(5, params.bottomMargin);
+    }
+
+    /**
+     * A TextView that counts the calls to the setters {@link TextStyle} wraps.
+     */
+    private static final class CountingTextView extends TextView {
+        private int typefaceCount;
+        private int textSizeCount;
+        private int textColorCount;
+        private int layoutCount;
+
+        CountingTextView(Context context) {
+            super(context);
+        }
+
+        /**
+         * Reset the counts, i.e. after the calls made while the View is set up.
+         */
+        void reset() {
+            typefaceCount = 0;
+            textSizeCount = 0;
+            textColorCount = 0;
+            layoutCount = 0;
+        }
+
+        @Override
+        public void setTypeface(Typeface typeface) {
+            typefaceCount++;
+            super.setTypeface(typeface);
+        }
+
+        @Override
+        public void setTextSize(int unit, float size) {
+            textSizeCount++;
+            super.setTextSize(unit, size);
+        }
+
+        @Override
+        public void setTextColor(int color) {
+            textColorCount++;
+            super.setTextColor(color);
+        }
+
+        @Override
+        public void requestLayout() {
+            layoutCount++;
+            super.requestLayout();
+        }
+    }
+}
@@ -20,6 +20,7 @@ import com.github.chrisbanes.photoview.PhotoView;
 
 import tk.nathanf.chatthread.R;
 import tk.nathanf.chatthread.components.Author;
+import tk.nathanf.chatthread.util.ImageUtil;
 
 /**
  * Default Preview Image activity.
@@ -122,7 +123,8 @@ public final class PreviewImage extends AppCompatActivity {
      */
     private void doDownload() {
         MediaStore.Images.Media.insertImage(
-            getContentResolver(), currentlyDisplayedImage, currentlyDisplayedImageName, null
+            getContentResolver(), ImageUtil.ensureSoftware(currentlyDisplayedImage),
+            currentlyDisplayedImageName, null
         );
         Toast.makeText(PreviewImage.this, "Image saved to device", Toast.LENGTH_SHORT).show();
     }
@@ -3,8 +3,6 @@ package tk.nathanf.chatthread.components;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.drawable.Drawable;
-import android.os.Looper;
-import android.os.Handler;
 import android.util.Log;
 import android.widget.BaseAdapter;
 
@@ -12,8 +10,10 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.URL;
+
+import tk.nathanf.chatthread.components.loading.Http;
+import tk.nathanf.chatthread.components.loading.LoadHandle;
+import tk.nathanf.chatthread.components.loading.Loader;
 
 public class Author {
     /**
@@ -41,6 +41,11 @@ public class Author {
      */
     private boolean avatarLoading = false;
 
+    /**
+     * The handle for the avatar load, while it is in progress.
+     */
+    private @Nullable LoadHandle avatarHandle;
+
     /**
      * Create the Author.
      *
@@ -78,6 +83,31 @@ public class Author {
         this.avatarUrl = avatarUrl;
     }
 
+    /**
+     * Set the Avatar for the Author, cancelling any avatar load in progress.
+     *
+     * @param avatar The avatar, or null to load it from {@link Author#getAvatarUrl()}
+     *               the next time it is requested.
+     */
+    @SuppressWarnings("unused")
+    public void setAvatar(@Nullable Bitmap avatar) {
+        this.cancelAvatarLoading();
+        this.avatar = avatar;
+    }
+
+    /**
+     * Cancel the avatar load, if one is in progress. The adapter is not notified for a
+     * cancelled load, and the avatar is loaded again the next time it is requested.
+     */
+    @SuppressWarnings("WeakerAccess")
+    public void cancelAvatarLoading() {
+        if (this.avatarHandle != null) {
+            this.avatarHandle.cancel();
+            this.avatarHandle = null;
+        }
+        this.avatarLoading = false;
+    }
+
     /**
      * Retrieve the source for the Author.
      *
@@ -117,8 +147,9 @@ public class Author {
      * {@link Author#getAvatarUrl()} has been called and returned a non-null
      * value that was properly formatted into a Bitmap. If the avatar ends up
      * being loaded from a URL, once it is completed the adapter will have
-     * {@link BaseAdapter#notifyDataSetChanged()} called to update the
-     * relevant ImageViews.
+     * {@link MessageThreadListAdapter#notifyAuthorChanged(Author)} called to
+     * update the relevant ImageViews, or
+     * {@link BaseAdapter#notifyDataSetChanged()} for any other adapter.
      *
      * If you override this function, {@link Author#getAvatarUrl()} will never
      * be called.
@@ -151,29 +182,62 @@ public class Author {
         if (this.source == Message.Source.Other)
             Log.d("PPD", "Starting load of avatar");
         avatarLoading = true;
-        new Thread(new Runnable() {
+        avatarHandle = Loader.submit(new Loader.Task() {
             @Override
-            public void run() {
+            public void load(@NonNull final LoadHandle handle) {
+                Bitmap bitmap = null;
                 try {
-                    InputStream input = new URL(url).openStream();
-                    avatar = BitmapFactory.decodeStream(input);
+                    byte[] data = Http.readFully(url, Http.Resource.Avatar);
+                    if (handle.isCancelled()) {
+                        return;
+                    }
+                    bitmap = BitmapFactory.decodeByteArray(
+                        data, 0, data.length, getDecodePolicy(adapter).toOptions()
+                    );
                     Log.d("PPD", "Finished load of avatar");
                 } catch (IOException e) {
                     e.printStackTrace();
-                } finally {
-                    new Handler(Looper.getMainLooper()).post(new Runnable() {
-                        @Override
-                        public void run() {
-                            if (adapter != null) {
-                                avatarLoading = false;
-                                adapter.notifyDataSetChanged();
-                            }
-                        }
-                    });
                 }
+
+                // Delivered loads are dropped once cancelled, so a cancelled
+                // load never replaces the avatar or notifies the adapter.
+                final Bitmap loaded = bitmap;
+                Loader.deliver(handle, new Runnable() {
+                    @Override
+                    public void run() {
+                        if (avatarHandle != handle) {
+                            return;
+                        }
+
+                        avatarHandle = null;
+                        avatarLoading = false;
+                        avatar = loaded;
+                        if (adapter instanceof MessageThreadListAdapter) {
+                            ((MessageThreadListAdapter) adapter)
+                                .notifyAuthorChanged(Author.this);
+                        } else if (adapter != null) {
+                            adapter.notifyDataSetChanged();
+                        }
+                    }
+                });
             }
-        }).start();
+        });
 
         return this.avatar;
     }
+
+    /**
+     * Retrieve the policy to decode the avatar with.
+     *
+     * @param adapter The Adapter the avatar was requested by.
+     * @return The decode policy.
+     */
+    private static MessageParameters.DecodePolicy getDecodePolicy(BaseAdapter adapter) {
+        MessageParameters parameters = adapter instanceof MessageThreadListAdapter
+            ? ((MessageThreadListAdapter) adapter).getParameters()
+            : null;
+        return parameters == null
+            ? MessageParameters.DEFAULT_AVATAR_DECODE_POLICY
+            : parameters.getAvatarDecodePolicy();
+    }
 }
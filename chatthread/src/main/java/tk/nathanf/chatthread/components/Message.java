@@ -8,6 +8,7 @@ import android.view.ViewGroup;
 import tk.nathanf.chatthread.components.messages.MessageTypes;
 import tk.nathanf.chatthread.components.messages.types.ImageMessage;
 import tk.nathanf.chatthread.components.messages.types.TextMessage;
+import tk.nathanf.chatthread.components.loading.LoadHandle;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -50,12 +51,13 @@ public abstract class Message {
     private int position;
 
     /**
-     * The Date on which this Message was sent.
+     * The time at which this Message was sent, in milliseconds since the epoch.
+     * Defaults to the time at which the Message was created.
      *
-     * @see Message#getSentOn()
-     * @see Message#setSentOn(Date)
+     * @see Message#getSentOnMillis()
+     * @see Message#setSentOn(long)
      */
-    private Date sentOn;
+    private long sentOn = System.currentTimeMillis();
 
     /**
      * The Author of this Message.
@@ -96,24 +98,47 @@ public abstract class Message {
         return this.author;
     }
 
+    /**
+     * Set the time at which this message was sent.
+     *
+     * @param time The time, in milliseconds since the epoch.
+     */
+    public final void setSentOn(long time) {
+        this.sentOn = time;
+    }
+
     /**
      * Set the Date on which this message was sent.
      *
-     * @param date The date.
+     * @param date The date, or null to leave the time at which the Message was created.
      */
     @SuppressWarnings({"WeakerAccess", "unused"})
-    public final void setSentOn(Date date) {
-        this.sentOn = date;
+    public final void setSentOn(@Nullable Date date) {
+        if (date != null) {
+            this.sentOn = date.getTime();
+        }
     }
 
     /**
-     * Retrieve the Date on which this Message was sent. If non is set,
-     * the current date will be returned instead.
+     * Retrieve the time at which this Message was sent. If none is set,
+     * the time at which the Message was created is returned instead.
      *
-     * @return The date.
+     * @return The time, in milliseconds since the epoch.
      */
+    public final long getSentOnMillis() {
+        return this.sentOn;
+    }
+
+    /**
+     * Retrieve the Date on which this Message was sent. If none is set,
+     * the time at which the Message was created is returned instead.
+     *
+     * @return A new Date.
+     * @deprecated Allocates a new Date on every call, use {@link Message#getSentOnMillis()}.
+     */
+    @Deprecated
     public final @NonNull Date getSentOn() {
-        return this.sentOn == null ? new Date() : this.sentOn;
+        return new Date(this.sentOn);
     }
 
     /**
@@ -296,6 +321,7 @@ public abstract class Message {
     /**
      * Retrieve the Padding for this Message Type.
      * Defaults to {@link MessageParameters#getTextMessagePadding()}
+     * This is called every time the Message is bound, so it may depend on the Message.
      *
      * @param parameters The Parameters.
      *
@@ -314,6 +340,7 @@ public abstract class Message {
     /**
      * Retrieve the corner radius for this Message Type.
      * Defaults to {@link MessageParameters#getMessageRadiusPx()}
+     * This is called every time the Message is bound, so it may depend on the Message.
      *
      * @param parameters The parameters.
      *
@@ -412,4 +439,50 @@ public abstract class Message {
      * @see Message#createView(MessageParameters, ViewGroup)
      */
     public abstract void bindView(MessageParameters parameters, View view);
+
+    /**
+     * Apply the Parameters to a View created with
+     * {@link Message#createView(MessageParameters, ViewGroup)}, i.e. its colors, fonts
+     * and corner radii.
+     *
+     * This is called before the View is first bound, and again whenever the Parameters of
+     * the {@link MessageThread} change, see {@link MessageParameters#getVersion()}. It is not
+     * called when the View is bound to another Message with the same Parameters, so it
+     * should only apply values from the Parameters and the {@link Message.Source} of the
+     * Message, never its content.
+     *
+     * @param parameters The Parameters.
+     * @param view       The View.
+     */
+    public void styleView(MessageParameters parameters, View view) {}
+
+    /**
+     * Cancel any asynchronous loads started by this Message.
+     *
+     * This is called by the adapter when the View this Message was bound to is recycled
+     * for another Message, or when this Message is removed from the adapter. Message types
+     * that load content asynchronously should cancel their loads here and restart them the
+     * next time {@link Message#bindView(MessageParameters, View)} is called.
+     */
+    public void cancelLoading() {}
+
+    /**
+     * Start any asynchronous loads this Message needs before it is displayed.
+     *
+     * This is called by the adapter when a row within the prefetch distance of this
+     * Message is bound, see {@link MessageThreadListAdapter#setPrefetchDistance(int)}.
+     * Message types that load content lazily should start their loads here and mark
+     * them as not visible with {@link LoadHandle#setVisible(boolean)}, so they are
+     * fetched after the loads of Messages that are on screen.
+     */
+    public void prefetch() {}
+
+    /**
+     * Release any resources this Message shares with other Messages.
+     *
+     * This is called by the adapter when this Message is removed from it. Apps that
+     * manage their own list of Messages through a {@link MessageThreadAdapter} should
+     * call it when they drop a Message.
+     */
+    public void release() {}
 }
@@ -1,8 +1,11 @@
 package tk.nathanf.chatthread.components;
 
 import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.graphics.Typeface;
 import android.os.Build;
+import android.util.DisplayMetrics;
 
 import androidx.annotation.ColorInt;
 import androidx.annotation.NonNull;
@@ -10,10 +13,14 @@ import androidx.annotation.Px;
 import androidx.annotation.RequiresApi;
 
 import tk.nathanf.chatthread.components.dates.MessageDateFormatter;
+import tk.nathanf.chatthread.util.ImageUtil;
 import tk.nathanf.chatthread.util.Measure;
 
 /**
  * Representation of Message Parameters.
+ *
+ * Message Parameters are immutable. Changing them through the setters of the
+ * {@link MessageThread} publishes a new version, see {@link MessageParameters#getVersion()}.
  */
 @SuppressWarnings("WeakerAccess")
 public final class MessageParameters {
@@ -67,35 +74,283 @@ public final class MessageParameters {
         }
     }
 
-    private Context context;
-    int sentColor;
-    int sentMessageTextColor;
-    int receivedColor;
-    int receivedMessageTextColor;
-    int dateColor;
-    float messageRadiusTopFrom;
-    float messageRadiusTopTo;
-    float messageRadiusBottomFrom;
-    float messageRadiusBottomTo;
-    int textMessagePadding;
-    int imageMessagePadding;
-    int previewMessagePadding;
-    int progressBarColor;
-    float elevation;
-    int avatarScale;
-    int avatarShape;
-    boolean displayOutgoingAvatars;
-    boolean displayIncomingAvatars;
-    MessageDateFormatter dateFormatter;
-    boolean dateHeaderEnabled;
-    int dateHeaderColor;
-    int dateHeaderSeparationMinutes;
-    Typeface messageFont;
-    Typeface dateFont;
-    Typeface dateHeaderFont;
-    float messageFontSize;
-    float dateFontSize;
-    float dateHeaderFontSize;
+    /**
+     * Representation of the Bitmap configuration used when decoding images.
+     */
+    public enum DecodePolicy {
+        /**
+         * Decode with full 32-bit color and alpha. Uses the most memory.
+         */
+        Quality,
+
+        /**
+         * Decode with 16-bit color, halving the memory used by opaque images.
+         * Images with an alpha channel are still decoded with full color and alpha.
+         */
+        Opaque,
+
+        /**
+         * Decode into GPU memory on API 26+, falling back to {@link DecodePolicy#Opaque} on
+         * older devices. Only suitable for images that are drawn and never read back: drawing
+         * them on a software layer or Canvas, or reading their pixels, throws.
+         * Never used unless it is set explicitly.
+         *
+         * @see ImageUtil#ensureSoftware(Bitmap)
+         */
+        Hardware;
+
+        /**
+         * Create the options to decode an image with according to this policy.
+         *
+         * @return The options.
+         */
+        public BitmapFactory.Options toOptions() {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            if (this == Hardware && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                options.inPreferredConfig = Bitmap.Config.HARDWARE;
+            } else if (this == Quality) {
+                options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            } else {
+                options.inPreferredConfig = Bitmap.Config.RGB_565;
+            }
+            return options;
+        }
+    }
+
+    /**
+     * The default policy used when decoding images for Image messages.
+     */
+    public static final DecodePolicy DEFAULT_IMAGE_DECODE_POLICY = DecodePolicy.Opaque;
+
+    /**
+     * The default policy used when decoding avatars.
+     */
+    public static final DecodePolicy DEFAULT_AVATAR_DECODE_POLICY = DecodePolicy.Opaque;
+
+    /**
+     * The default policy used when decoding images for Preview messages.
+     */
+    public static final DecodePolicy DEFAULT_PREVIEW_DECODE_POLICY = DecodePolicy.Opaque;
+
+    /**
+     * Pixel sizes used when binding Messages, resolved once for the display density
+     * the Parameters were published for.
+     */
+    public static final class Dimensions {
+        private final float density;
+        private final int dp8;
+        private final int dp16;
+        private final int avatarSize;
+        private final int previewImageHeight;
+
+        /**
+         * Resolve the Dimensions for the current configuration of a Context.
+         *
+         * @param context     The Context.
+         * @param avatarScale The scale of avatars, in dp.
+         */
+        Dimensions(Context context, int avatarScale) {
+            DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+            this.density = (float) metrics.densityDpi / DisplayMetrics.DENSITY_DEFAULT;
+            this.dp8 = (int) (8 * this.density);
+            this.dp16 = (int) (16 * this.density);
+            this.avatarSize = (int) (avatarScale * this.density);
+            this.previewImageHeight = (int) (PREVIEW_IMAGE_HEIGHT_DP * this.density);
+        }
+
+        /**
+         * @return The number of pixels per dp these Dimensions were resolved with.
+         */
+        public float getDensity() {
+            return density;
+        }
+
+        /**
+         * @return 8dp in Pixels.
+         */
+        public @Px int getDp8() {
+            return dp8;
+        }
+
+        /**
+         * @return 16dp in Pixels.
+         */
+        public @Px int getDp16() {
+            return dp16;
+        }
+
+        /**
+         * @return The size of avatars in Pixels.
+         */
+        public @Px int getAvatarSize() {
+            return avatarSize;
+        }
+
+        /**
+         * @return The height of the image in Preview messages in Pixels.
+         */
+        public @Px int getPreviewImageHeight() {
+            return previewImageHeight;
+        }
+    }
+
+    /**
+     * The height of the image in Preview messages, in dp.
+     */
+    public static final float PREVIEW_IMAGE_HEIGHT_DP = 120;
+
+    /**
+     * Builds a new version of a set of Message Parameters.
+     *
+     * @see MessageParameters#edit()
+     */
+    static final class Builder {
+        private final MessageParameters source;
+        Context context;
+        int sentColor;
+        int sentMessageTextColor;
+        int receivedColor;
+        int receivedMessageTextColor;
+        int dateColor;
+        float messageRadiusTopFrom;
+        float messageRadiusTopTo;
+        float messageRadiusBottomFrom;
+        float messageRadiusBottomTo;
+        int textMessagePadding;
+        int imageMessagePadding;
+        int previewMessagePadding;
+        int progressBarColor;
+        float elevation;
+        int avatarScale;
+        int avatarShape;
+        boolean displayOutgoingAvatars;
+        boolean displayIncomingAvatars;
+        MessageDateFormatter dateFormatter;
+        boolean dateHeaderEnabled;
+        int dateHeaderColor;
+        int dateHeaderSeparationMinutes;
+        Typeface messageFont;
+        Typeface dateFont;
+        Typeface dateHeaderFont;
+        float messageFontSize;
+        float dateFontSize;
+        float dateHeaderFontSize;
+        DecodePolicy imageDecodePolicy;
+        DecodePolicy avatarDecodePolicy;
+        DecodePolicy previewDecodePolicy;
+
+        /**
+         * Create a Builder initialized with the values of existing Parameters.
+         *
+         * @param source The Parameters.
+         */
+        Builder(MessageParameters source) {
+            this.source = source;
+            this.context = source.context;
+            this.sentColor = source.sentColor;
+            this.sentMessageTextColor = source.sentMessageTextColor;
+            this.receivedColor = source.receivedColor;
+            this.receivedMessageTextColor = source.receivedMessageTextColor;
+            this.dateColor = source.dateColor;
+            this.messageRadiusTopFrom = source.messageRadiusTopFrom;
+            this.messageRadiusTopTo = source.messageRadiusTopTo;
+            this.messageRadiusBottomFrom = source.messageRadiusBottomFrom;
+            this.messageRadiusBottomTo = source.messageRadiusBottomTo;
+            this.textMessagePadding = source.textMessagePadding;
+            this.imageMessagePadding = source.imageMessagePadding;
+            this.previewMessagePadding = source.previewMessagePadding;
+            this.progressBarColor = source.progressBarColor;
+            this.elevation = source.elevation;
+            this.avatarScale = source.avatarScale;
+            this.avatarShape = source.avatarShape;
+            this.displayOutgoingAvatars = source.displayOutgoingAvatars;
+            this.displayIncomingAvatars = source.displayIncomingAvatars;
+            this.dateFormatter = source.dateFormatter;
+            this.dateHeaderEnabled = source.dateHeaderEnabled;
+            this.dateHeaderColor = source.dateHeaderColor;
+            this.dateHeaderSeparationMinutes = source.dateHeaderSeparationMinutes;
+            this.messageFont = source.messageFont;
+            this.dateFont = source.dateFont;
+            this.dateHeaderFont = source.dateHeaderFont;
+            this.messageFontSize = source.messageFontSize;
+            this.dateFontSize = source.dateFontSize;
+            this.dateHeaderFontSize = source.dateHeaderFontSize;
+            this.imageDecodePolicy = source.imageDecodePolicy;
+            this.avatarDecodePolicy = source.avatarDecodePolicy;
+            this.previewDecodePolicy = source.previewDecodePolicy;
+        }
+
+        /**
+         * Set the Radius for messages.
+         *
+         * @param topFrom    The TOP FROM corner.
+         * @param topTo      The TOP TO corner.
+         * @param bottomTo   The BOTTOM TO corner.
+         * @param bottomFrom The BOTTOM FROM corner.
+         * @return This Builder.
+         */
+        Builder setMessageRadiusPx(float topFrom, float topTo, float bottomTo, float bottomFrom) {
+            this.messageRadiusTopFrom = topFrom;
+            this.messageRadiusTopTo = topTo;
+            this.messageRadiusBottomTo = bottomTo;
+            this.messageRadiusBottomFrom = bottomFrom;
+            return this;
+        }
+
+        /**
+         * Build the Parameters, with a version one higher than the Parameters this
+         * Builder was created from. The Dimensions are resolved again for the
+         * current configuration.
+         *
+         * @return The Parameters.
+         */
+        MessageParameters build() {
+            return new MessageParameters(this, this.source.version + 1);
+        }
+    }
+
+    private final Context context;
+    final int sentColor;
+    final int sentMessageTextColor;
+    final int receivedColor;
+    final int receivedMessageTextColor;
+    final int dateColor;
+    final float messageRadiusTopFrom;
+    final float messageRadiusTopTo;
+    final float messageRadiusBottomFrom;
+    final float messageRadiusBottomTo;
+    final int textMessagePadding;
+    final int imageMessagePadding;
+    final int previewMessagePadding;
+    final int progressBarColor;
+    final float elevation;
+    final int avatarScale;
+    final int avatarShape;
+    final boolean displayOutgoingAvatars;
+    final boolean displayIncomingAvatars;
+    final MessageDateFormatter dateFormatter;
+    final boolean dateHeaderEnabled;
+    final int dateHeaderColor;
+    final int dateHeaderSeparationMinutes;
+    final Typeface messageFont;
+    final Typeface dateFont;
+    final Typeface dateHeaderFont;
+    final float messageFontSize;
+    final float dateFontSize;
+    final float dateHeaderFontSize;
+    final DecodePolicy imageDecodePolicy;
+    final DecodePolicy avatarDecodePolicy;
+    final DecodePolicy previewDecodePolicy;
+
+    /**
+     * The version of these Parameters.
+     */
+    private final int version;
+
+    /**
+     * The Dimensions resolved for these Parameters.
+     */
+    private final Dimensions dimensions;
 
     /**
      * Create the new Message Parameters.
@@ -160,21 +415,85 @@ public final class MessageParameters {
         this.messageFontSize = messageFontSize;
         this.dateFontSize = dateFontSize;
         this.dateHeaderFontSize = dateHeaderFontSize;
+        this.imageDecodePolicy = DEFAULT_IMAGE_DECODE_POLICY;
+        this.avatarDecodePolicy = DEFAULT_AVATAR_DECODE_POLICY;
+        this.previewDecodePolicy = DEFAULT_PREVIEW_DECODE_POLICY;
+        this.version = 0;
+        this.dimensions = new Dimensions(context, avatarScale);
+    }
+
+    /**
+     * Create a new version of Message Parameters.
+     *
+     * @param builder The Builder holding the values.
+     * @param version The version.
+     */
+    private MessageParameters(Builder builder, int version) {
+        this.context = builder.context;
+        this.sentColor = builder.sentColor;
+        this.sentMessageTextColor = builder.sentMessageTextColor;
+        this.receivedColor = builder.receivedColor;
+        this.receivedMessageTextColor = builder.receivedMessageTextColor;
+        this.dateColor = builder.dateColor;
+        this.messageRadiusTopFrom = builder.messageRadiusTopFrom;
+        this.messageRadiusTopTo = builder.messageRadiusTopTo;
+        this.messageRadiusBottomFrom = builder.messageRadiusBottomFrom;
+        this.messageRadiusBottomTo = builder.messageRadiusBottomTo;
+        this.textMessagePadding = builder.textMessagePadding;
+        this.imageMessagePadding = builder.imageMessagePadding;
+        this.previewMessagePadding = builder.previewMessagePadding;
+        this.progressBarColor = builder.progressBarColor;
+        this.elevation = builder.elevation;
+        this.avatarScale = builder.avatarScale;
+        this.avatarShape = builder.avatarShape;
+        this.displayOutgoingAvatars = builder.displayOutgoingAvatars;
+        this.displayIncomingAvatars = builder.displayIncomingAvatars;
+        this.dateFormatter = builder.dateFormatter;
+        this.dateHeaderEnabled = builder.dateHeaderEnabled;
+        this.dateHeaderColor = builder.dateHeaderColor;
+        this.dateHeaderSeparationMinutes = builder.dateHeaderSeparationMinutes;
+        this.messageFont = builder.messageFont;
+        this.dateFont = builder.dateFont;
+        this.dateHeaderFont = builder.dateHeaderFont;
+        this.messageFontSize = builder.messageFontSize;
+        this.dateFontSize = builder.dateFontSize;
+        this.dateHeaderFontSize = builder.dateHeaderFontSize;
+        this.imageDecodePolicy = builder.imageDecodePolicy;
+        this.avatarDecodePolicy = builder.avatarDecodePolicy;
+        this.previewDecodePolicy = builder.previewDecodePolicy;
+        this.version = version;
+        this.dimensions = new Dimensions(builder.context, builder.avatarScale);
+    }
+
+    /**
+     * Create a Builder for a new version of these Parameters.
+     *
+     * @return The Builder.
+     */
+    Builder edit() {
+        return new Builder(this);
+    }
+
+    /**
+     * Retrieve the version of these Parameters. Parameters are immutable, every change
+     * made through the setters of the {@link MessageThread} publishes a new version.
+     * Views styled with one version only need to be styled again once it changes.
+     *
+     * @return The version.
+     */
+    public int getVersion() {
+        return version;
     }
 
     /**
-     * Set the Radius for messages.
+     * Retrieve the pixel sizes used when binding Messages, resolved for the display
+     * density at the time these Parameters were published. The MessageThread publishes
+     * new Parameters when the density changes.
      *
-     * @param topFrom    The TOP FROM corner.
-     * @param topTo      The TOP TO corner.
-     * @param bottomTo   The BOTTOM TO corner.
-     * @param bottomFrom The BOTTOM FROM corner.
+     * @return The Dimensions.
      */
-    void setMessageRadiusPx(float topFrom, float topTo, float bottomTo, float bottomFrom) {
-        this.messageRadiusTopFrom = topFrom;
-        this.messageRadiusTopTo = topTo;
-        this.messageRadiusBottomTo = bottomTo;
-        this.messageRadiusBottomFrom = bottomFrom;
+    public @NonNull Dimensions getDimensions() {
+        return dimensions;
     }
 
     /**
@@ -414,4 +733,25 @@ public final class MessageParameters {
     public float getDateHeaderFontSizeSp() {
         return dateHeaderFontSize;
     }
+
+    /**
+     * @return The policy used when decoding images for Image messages.
+     */
+    public DecodePolicy getImageDecodePolicy() {
+        return imageDecodePolicy;
+    }
+
+    /**
+     * @return The policy used when decoding avatars.
+     */
+    public DecodePolicy getAvatarDecodePolicy() {
+        return avatarDecodePolicy;
+    }
+
+    /**
+     * @return The policy used when decoding images for Preview messages.
+     */
+    public DecodePolicy getPreviewDecodePolicy() {
+        return previewDecodePolicy;
+    }
 }
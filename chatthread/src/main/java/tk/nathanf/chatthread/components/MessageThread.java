@@ -1,12 +1,19 @@
 package tk.nathanf.chatthread.components;
 
 import android.content.Context;
-import android.content.res.TypedArray;
+import android.content.res.Configuration;
 
 import android.graphics.Typeface;
 import android.os.Build;
+import android.text.format.DateUtils;
 import android.util.AttributeSet;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.view.Choreographer;
 import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.AbsListView;
+import android.widget.ListAdapter;
 import android.widget.ListView;
 
 import androidx.annotation.ColorInt;
@@ -18,9 +25,7 @@ import androidx.annotation.RequiresApi;
 import androidx.constraintlayout.widget.ConstraintLayout;
 
 import tk.nathanf.chatthread.R;
-import tk.nathanf.chatthread.components.dates.DefaultMessageDateFormatter;
 import tk.nathanf.chatthread.components.dates.MessageDateFormatter;
-import tk.nathanf.chatthread.util.Measure;
 import tk.nathanf.chatthread.components.messages.types.TextMessage;
 import tk.nathanf.chatthread.components.messages.types.ImageMessage;
 import tk.nathanf.chatthread.components.messages.types.PreviewMessage;
@@ -30,6 +35,25 @@ import tk.nathanf.chatthread.components.messages.types.PreviewMessage;
  */
 @SuppressWarnings("unused")
 public final class MessageThread extends ConstraintLayout {
+    /**
+     * The tag used when logging.
+     */
+    private static final String TAG = "MessageThread";
+
+    /**
+     * Listener notified when the number of unread Messages changes.
+     */
+    public interface UnreadCountListener {
+        /**
+         * Called on the main thread when the number of unread Messages has changed.
+         *
+         * @param thread      The MessageThread.
+         * @param unreadCount The number of Messages added below the visible rows
+         *                    that have not been scrolled to yet.
+         */
+        void onUnreadCountChanged(@NonNull MessageThread thread, int unreadCount);
+    }
+
     /**
      * The List View for the Message Thread.
      */
@@ -40,6 +64,84 @@ public final class MessageThread extends ConstraintLayout {
      */
     MessageParameters parameters;
 
+    /**
+     * The preset the Parameters were created from.
+     */
+    private StylePreset preset;
+
+    /**
+     * Applies the fonts of the preset once they have loaded in the background, unless
+     * they have been set on this Thread in the meantime.
+     */
+    private final StylePreset.Listener fontsListener = new StylePreset.Listener() {
+        @Override
+        public void onFontsLoaded(@NonNull StylePreset preset) {
+            MessageParameters.Builder builder = parameters.edit();
+            boolean changed = false;
+            if (builder.messageFont == null && preset.getMessageFont() != null) {
+                builder.messageFont = preset.getMessageFont();
+                changed = true;
+            }
+            if (builder.dateFont == null && preset.getDateFont() != null) {
+                builder.dateFont = preset.getDateFont();
+                changed = true;
+            }
+            if (builder.dateHeaderFont == null && preset.getDateHeaderFont() != null) {
+                builder.dateHeaderFont = preset.getDateHeaderFont();
+                changed = true;
+            }
+            if (changed) {
+                setParameters(builder.build());
+            }
+        }
+    };
+
+    /**
+     * Refreshes the relative date labels of the visible rows once a minute
+     * while this Thread is attached to a window.
+     */
+    private final Runnable dateTicker = new Runnable() {
+        @Override
+        public void run() {
+            MessageThreadListAdapter adapter = getAdapter();
+            if (adapter != null) {
+                adapter.refreshDateLabels();
+            }
+            scheduleDateTick();
+        }
+    };
+
+    /**
+     * Whether or not a scroll to the bottom has been requested for the next frame.
+     */
+    private boolean scrollPosted = false;
+
+    /**
+     * Scrolls the Thread to the bottom, once per frame no matter how many
+     * scrolls were requested during it.
+     */
+    private final Choreographer.FrameCallback scrollCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            scrollPosted = false;
+            ListAdapter adapter = messageThreadView.getAdapter();
+            if (adapter != null && adapter.getCount() > 0) {
+                messageThreadView.setSelection(adapter.getCount() - 1);
+            }
+            setUnreadCount(0);
+        }
+    };
+
+    /**
+     * The number of Messages added below the visible rows that have not been scrolled to.
+     */
+    private int unreadCount = 0;
+
+    /**
+     * The listener notified when the number of unread Messages changes.
+     */
+    private UnreadCountListener unreadCountListener;
+
     /**
      * Create a new Message Thread.
      *
@@ -83,12 +185,11 @@ public final class MessageThread extends ConstraintLayout {
     private void init(
         @NonNull Context context,
         @Nullable AttributeSet attrs,
-        @SuppressWarnings("unused") int defStyleAttr
+        int defStyleAttr
     ) {
-        TypedArray typedArray;
-        typedArray = context.obtainStyledAttributes(attrs, R.styleable.MessageThread);
-        this.initializeParameters(typedArray);
-        typedArray.recycle();
+        this.preset = StylePreset.resolve(context, attrs, defStyleAttr);
+        this.parameters = this.preset.createParameters(context);
+        this.preset.loadFonts(context, this.fontsListener);
 
         LayoutInflater inflater = (LayoutInflater) context
                 .getSystemService(Context.LAYOUT_INFLATER_SERVICE);
@@ -96,6 +197,69 @@ public final class MessageThread extends ConstraintLayout {
         assert(inflater != null);
         inflater.inflate(R.layout.message_thread, this, true);
         messageThreadView = findViewById(R.id.message_thread);
+        messageThreadView.setRecyclerListener(new AbsListView.RecyclerListener() {
+            @Override
+            public void onMovedToScrapHeap(View view) {
+                MessageThreadListAdapter adapter = getAdapter();
+                if (adapter != null) {
+                    adapter.onRowRecycled(view);
+                }
+            }
+        });
+        messageThreadView.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {}
+
+            @Override
+            public void onScroll(
+                AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount
+            ) {
+                // Unread Messages are always the last ones, so any that
+                // have scrolled into view are no longer unread.
+                int below = totalItemCount - (firstVisibleItem + visibleItemCount);
+                if (below < unreadCount) {
+                    setUnreadCount(Math.max(0, below));
+                }
+            }
+        });
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+
+        // Labels may have gone stale while detached, refresh them straight away.
+        this.removeCallbacks(this.dateTicker);
+        this.post(this.dateTicker);
+    }
+
+    @Override
+    protected void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+
+        // Resolve the Dimensions again if the display density has changed.
+        float density = (float) getResources().getDisplayMetrics().densityDpi /
+            DisplayMetrics.DENSITY_DEFAULT;
+        if (density != this.parameters.getDimensions().getDensity()) {
+            this.setParameters(this.parameters.edit().build());
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        this.removeCallbacks(this.dateTicker);
+        super.onDetachedFromWindow();
+    }
+
+    /**
+     * Schedule the next refresh of the date labels at the start of the next minute, as told
+     * by the {@link MessageDateFormatter.Clock} of the Date Formatter.
+     */
+    private void scheduleDateTick() {
+        long now = this.parameters.getDateFormatter().now();
+        this.postDelayed(
+            this.dateTicker, DateUtils.MINUTE_IN_MILLIS - now % DateUtils.MINUTE_IN_MILLIS
+        );
     }
 
     /**
@@ -111,15 +275,92 @@ public final class MessageThread extends ConstraintLayout {
     }
 
     /**
-     * Scroll the Thread to the Bottom.
+     * Scroll the Thread to the Bottom on the next frame and mark every Message as read.
+     *
+     * Scrolls requested during the same frame are merged into one. The Thread jumps
+     * straight to the last row, so only the rows that end up on screen are bound no
+     * matter how far from the bottom it was.
      */
     public void scrollToBottom() {
-        messageThreadView.post(new Runnable() {
-            @Override
-            public void run() {
-                messageThreadView.setSelection(messageThreadView.getAdapter().getCount() - 1);
-            }
-        });
+        if (!this.scrollPosted) {
+            this.scrollPosted = true;
+            Choreographer.getInstance().postFrameCallback(this.scrollCallback);
+        }
+    }
+
+    /**
+     * Called by the Adapter when Messages have been added to the bottom of the Thread.
+     * The Thread follows them if its last row was fully visible before they were added,
+     * or a scroll to the bottom is already pending. Otherwise, it stays where it is and
+     * the Messages are counted as unread.
+     *
+     * @param previousCount The number of Messages before they were added.
+     * @param added         The number of Messages added.
+     * @param scroll        Whether or not the Thread may scroll to follow them.
+     */
+    void onAddedToBottom(int previousCount, int added, boolean scroll) {
+        if (scroll && (this.scrollPosted || this.isShowingLastRow(previousCount))) {
+            this.scrollToBottom();
+        } else if (!this.scrollPosted) {
+            this.setUnreadCount(this.unreadCount + added);
+        }
+    }
+
+    /**
+     * Check whether the last row was fully visible as of the last layout pass.
+     *
+     * @param count The number of Messages when the rows were laid out.
+     * @return True if the last row is fully visible, or no rows have been laid out yet.
+     */
+    private boolean isShowingLastRow(int count) {
+        int childCount = this.messageThreadView.getChildCount();
+        if (count == 0 || childCount == 0) {
+            return true;
+        }
+
+        if (this.messageThreadView.getLastVisiblePosition() < count - 1) {
+            return false;
+        }
+
+        View last = this.messageThreadView.getChildAt(childCount - 1);
+        return last.getBottom() <=
+            this.messageThreadView.getHeight() - this.messageThreadView.getPaddingBottom();
+    }
+
+    /**
+     * Retrieve the number of Messages that were added below the visible rows while the
+     * Thread was not scrolled to the bottom, and that have not been scrolled to since.
+     *
+     * @return The number of unread Messages.
+     */
+    public int getUnreadCount() {
+        return this.unreadCount;
+    }
+
+    /**
+     * Set the listener notified when the number of unread Messages changes, i.e. to
+     * show a button that calls {@link MessageThread#scrollToBottom()}.
+     *
+     * @param listener The listener, or null to remove it.
+     */
+    public void setUnreadCountListener(@Nullable UnreadCountListener listener) {
+        this.unreadCountListener = listener;
+    }
+
+    /**
+     * Set the number of unread Messages and notify the listener if it has changed.
+     *
+     * @param unreadCount The number of unread Messages.
+     */
+    private void setUnreadCount(int unreadCount) {
+        if (this.unreadCount == unreadCount) {
+            return;
+        }
+
+        this.unreadCount = unreadCount;
+        if (this.unreadCountListener != null) {
+            this.unreadCountListener.onUnreadCountChanged(this, unreadCount);
+        }
     }
 
     /**
@@ -141,190 +382,98 @@ public final class MessageThread extends ConstraintLayout {
     }
 
     /**
-     * Initialize the Parameters.
+     * Retrieve the current Parameters of this Message Thread.
      *
-     * @param typedArray The TypedArray storing the Parameters.
+     * @return The Parameters.
      */
-    private void initializeParameters(TypedArray typedArray) {
-        float dp3 = Measure.dpToPx(16, getContext());
-        float elevation = typedArray.getDimension(
-            R.styleable.MessageThread_mt_elevation,
-            dp3
-        );
-
-        float dp16 = Measure.dpToPx(16, getContext());
-        float messageRadiusTopFrom = typedArray.getDimension(
-            R.styleable.MessageThread_mt_message_radius_top_from,
-            dp16
-        );
-        float messageRadiusTopTo = typedArray.getDimension(
-            R.styleable.MessageThread_mt_message_radius_top_to,
-            dp16
-        );
-        float messageRadiusBottomFrom = typedArray.getDimension(
-            R.styleable.MessageThread_mt_message_radius_bottom_from,
-            dp16
-        );
-        float messageRadiusBottomTo = typedArray.getDimension(
-            R.styleable.MessageThread_mt_message_radius_bottom_to,
-            dp16
-        );
-
-        int textMessagePadding = (int)typedArray.getDimension(
-            R.styleable.MessageThread_mt_text_message_padding,
-            dp16
-        );
-
-        int imageMessagePadding = (int)typedArray.getDimension(
-            R.styleable.MessageThread_mt_image_message_padding,
-            0
-        );
-
-        int previewMessagePadding = (int)typedArray.getDimension(
-            R.styleable.MessageThread_mt_preview_message_padding,
-            0
-        );
-
-        int receivedColor = typedArray.getColor(
-            R.styleable.MessageThread_mt_received_color,
-            getContext().getResources().getColor(R.color.default_received)
-        );
-
-        int sentColor = typedArray.getColor(
-            R.styleable.MessageThread_mt_sent_color,
-            getContext().getResources().getColor(R.color.default_sent)
-        );
-
-        int receivedTextColor = typedArray.getColor(
-            R.styleable.MessageThread_mt_received_text_color,
-            getContext().getResources().getColor(R.color.default_received_text)
-        );
-
-        int sentTextColor = typedArray.getColor(
-            R.styleable.MessageThread_mt_sent_text_color,
-            getContext().getResources().getColor(R.color.default_sent_text)
-        );
-
-        int dateColor = typedArray.getColor(
-            R.styleable.MessageThread_mt_date_color,
-            getContext().getResources().getColor(R.color.default_date_color)
-        );
-
-        boolean displayOutgoingAvatars = typedArray.getBoolean(
-            R.styleable.MessageThread_mt_display_outgoing_avatars,
-            false
-        );
-
-        boolean displayIncomingAvatars = typedArray.getBoolean(
-            R.styleable.MessageThread_mt_display_incoming_avatars,
-            true
-        );
-
-        int avatarScale = typedArray.getInt(R.styleable.MessageThread_mt_avatar_scale, 40);
-        int avatarShape = typedArray.getInt(R.styleable.MessageThread_mt_avatar_shape, 0);
-
-        int progressBarColor = typedArray.getColor(
-            R.styleable.MessageThread_mt_progress_bar_color,
-            getContext().getResources().getColor(R.color.default_progress_bar_color)
-        );
-
-        boolean allow_minutes = typedArray.getBoolean(
-            R.styleable.MessageThread_mt_date_format_minutes, true
-        );
-
-        boolean allow_days = typedArray.getBoolean(
-            R.styleable.MessageThread_mt_date_format_days, true
-        );
-
-        boolean dateHeaderEnabled = typedArray.getBoolean(
-            R.styleable.MessageThread_mt_date_header_enabled,
-            true
-        );
-
-        int dateHeaderColor = typedArray.getColor(
-            R.styleable.MessageThread_mt_date_header_color,
-            getContext().getResources().getColor(R.color.default_date_header_color)
-        );
-
-        int dateHeaderSeparation = typedArray.getInteger(
-            R.styleable.MessageThread_mt_date_header_separation_minutes,
-            10
-        );
+    public @NonNull MessageParameters getParameters() {
+        return this.parameters;
+    }
 
-        Typeface messageFont = null;
-        Typeface dateFont = null;
-        Typeface dateHeaderFont = null;
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            messageFont = typedArray.getFont(
-                R.styleable.MessageThread_mt_message_font_family
-            );
-            dateFont = typedArray.getFont(
-                R.styleable.MessageThread_mt_date_font_family
-            );
-            dateHeaderFont = typedArray.getFont(
-                R.styleable.MessageThread_mt_date_header_font_family
-            );
+    /**
+     * Publish a new version of the Parameters. The visible rows are restyled together
+     * on the next frame, and other rows are restyled when they are next bound.
+     *
+     * @param parameters The Parameters.
+     */
+    private void setParameters(MessageParameters parameters) {
+        this.parameters = parameters;
+        MessageThreadListAdapter adapter = this.getAdapter();
+        if (adapter != null) {
+            adapter.onParametersChanged();
         }
+    }
 
-        float messageFontSize = typedArray.getDimension(
-            R.styleable.MessageThread_mt_message_text_size,
-            Measure.spToPx(14, getContext())
-        );
-
-        float dateFontSize = typedArray.getDimension(
-            R.styleable.MessageThread_mt_date_text_size,
-            messageFontSize
-        );
-
-        float dateHeaderFontSize = typedArray.getDimension(
-            R.styleable.MessageThread_mt_date_header_text_size,
-            dateFontSize
-        );
-
-        messageFontSize = Measure.pxToSp(messageFontSize, getContext());
-        dateFontSize = Measure.pxToSp(dateFontSize, getContext());
-        dateHeaderFontSize = Measure.pxToSp(dateHeaderFontSize, getContext());
-
-        String dateFormat = typedArray.getString(
-            R.styleable.MessageThread_mt_date_format
+    /**
+     * Set the Date Formatter for this Message Thread. The Factory is passed the default
+     * format and flags of the current Date Formatter, and the new Date Formatter keeps
+     * its Clock.
+     *
+     * <pre>
+     * messageThread.setDateFormatter(new MessageDateFormatter.Factory() {
+     *     public MessageDateFormatter create(String defaultFormat, int flags) {
+     *         return new MyDateFormatter(defaultFormat, flags);
+     *     }
+     * });
+     * </pre>
+     *
+     * @param factory The Date Formatter Factory.
+     */
+    public void setDateFormatter(@NonNull MessageDateFormatter.Factory factory) {
+        MessageDateFormatter current = this.parameters.dateFormatter;
+        MessageDateFormatter formatter = factory.create(
+            current.getDefaultFormat(), current.getFlags()
         );
-        if (dateFormat == null) {
-            dateFormat = "MMM d, yyyy 'at' h:mm aa";
-        }
-
-        int dateFlags = MessageDateFormatter.FLAG_ALL;
-
-        if (!allow_minutes) {
-            dateFlags -= MessageDateFormatter.FLAG_MINUTES;
-        }
+        formatter.setClock(current.getClock());
+        this.setDateFormatter(formatter);
+    }
 
-        if (!allow_days) {
-            dateFlags -= MessageDateFormatter.FLAG_DAYS;
+    /**
+     * Set the Date Formatter for this Message Thread. The date labels of the visible
+     * rows are updated straight away, without re-binding the rows.
+     *
+     * @param formatter The Date Formatter.
+     */
+    public void setDateFormatter(@NonNull MessageDateFormatter formatter) {
+        MessageParameters.Builder builder = this.parameters.edit();
+        builder.dateFormatter = formatter;
+        this.setParameters(builder.build());
+
+        MessageThreadListAdapter adapter = this.getAdapter();
+        if (adapter != null) {
+            adapter.onDateFormatterChanged();
         }
-
-        MessageDateFormatter formatter = new DefaultMessageDateFormatter(dateFormat, dateFlags);
-
-        parameters = new MessageParameters(
-            getContext(), sentColor, sentTextColor, receivedColor, receivedTextColor, dateColor,
-            messageRadiusTopFrom, messageRadiusBottomFrom, messageRadiusTopTo,
-            messageRadiusBottomTo, textMessagePadding, imageMessagePadding,
-            previewMessagePadding, progressBarColor, elevation, avatarScale, avatarShape,
-            displayIncomingAvatars, displayOutgoingAvatars, dateHeaderEnabled,
-            dateHeaderColor, dateHeaderSeparation, messageFont, dateFont, dateHeaderFont, messageFontSize, dateFontSize, dateHeaderFontSize, formatter
-        );
     }
 
     /**
      * Set the Date Formatter for this Message Thread.
      *
-     * @param formatter The Date Formatter class.
+     * @param formatter The Date Formatter class. It must have a public constructor
+     *                  taking the default format and the flags. If it cannot be created,
+     *                  the failure is logged and the current Date Formatter is kept.
+     * @deprecated Creates the Date Formatter with reflection, which breaks when its
+     *             constructor is removed by code shrinking. Use
+     *             {@link MessageThread#setDateFormatter(MessageDateFormatter.Factory)}.
      */
+    @Deprecated
     public void setDateFormatter(Class<? extends MessageDateFormatter> formatter) {
+        MessageDateFormatter current = this.parameters.dateFormatter;
+        MessageDateFormatter created;
         try {
-            this.parameters.dateFormatter = formatter.getDeclaredConstructor(String.class, int.class).newInstance(
-                this.parameters.dateFormatter.getDefaultFormat(), this.parameters.dateFormatter.getFlags()
+            created = formatter.getDeclaredConstructor(String.class, int.class)
+                .newInstance(current.getDefaultFormat(), current.getFlags());
+        } catch (Exception exception) {
+            Log.w(
+                TAG,
+                "Unable to create Date Formatter " + formatter.getName() + ". " +
+                "Use MessageThread.setDateFormatter(MessageDateFormatter.Factory).",
+                exception
             );
-        } catch (Exception ignored) {}
+            return;
+        }
+
+        created.setClock(current.getClock());
+        this.setDateFormatter(created);
     }
 
     /**
@@ -333,7 +482,9 @@ public final class MessageThread extends ConstraintLayout {
      * @param sentColor The Color.
      */
     public void setSentColor(@ColorInt int sentColor) {
-        this.parameters.sentColor = sentColor;
+        MessageParameters.Builder builder = this.parameters.edit();
+        builder.sentColor = sentColor;
+        this.setParameters(builder.build());
     }
 
     /**
@@ -342,7 +493,9 @@ public final class MessageThread extends ConstraintLayout {
      * @param sentMessageTextColor The Text Color.
      */
     public void setSentMessageTextColor(@ColorInt int sentMessageTextColor) {
-        this.parameters.sentMessageTextColor = sentMessageTextColor;
+        MessageParameters.Builder builder = this.parameters.edit();
+        builder.sentMessageTextColor = sentMessageTextColor;
+        this.setParameters(builder.build());
     }
 
     /**
@@ -351,7 +504,9 @@ public final class MessageThread extends ConstraintLayout {
      * @param receivedColor The background color.
      */
     public void setReceivedColor(@ColorInt int receivedColor) {
-        this.parameters.receivedColor = receivedColor;
+        MessageParameters.Builder builder = this.parameters.edit();
+        builder.receivedColor = receivedColor;
+        this.setParameters(builder.build());
     }
 
     /**
@@ -360,7 +515,9 @@ public final class MessageThread extends ConstraintLayout {
      * @param receivedMessageTextColor The Text color.
      */
     public void setReceivedMessageTextColor(@ColorInt int receivedMessageTextColor) {
-        this.parameters.receivedMessageTextColor = receivedMessageTextColor;
+        MessageParameters.Builder builder = this.parameters.edit();
+        builder.receivedMessageTextColor = receivedMessageTextColor;
+        this.setParameters(builder.build());
     }
 
     /**
@@ -369,7 +526,9 @@ public final class MessageThread extends ConstraintLayout {
      * @param dateColor The text color.
      */
     public void setDateColor(@ColorInt int dateColor) {
-        this.parameters.dateColor = dateColor;
+        MessageParameters.Builder builder = this.parameters.edit();
+        builder.dateColor = dateColor;
+        this.setParameters(builder.build());
     }
 
     /**
@@ -379,7 +538,9 @@ public final class MessageThread extends ConstraintLayout {
      * @see TextMessage
      */
     public void setTextMessagePadding(@Px int textMessagePadding) {
-        this.parameters.textMessagePadding = textMessagePadding;
+        MessageParameters.Builder builder = this.parameters.edit();
+        builder.textMessagePadding = textMessagePadding;
+        this.setParameters(builder.build());
     }
 
     /**
@@ -389,7 +550,9 @@ public final class MessageThread extends ConstraintLayout {
      * @see ImageMessage
      */
     public void setImageMessagePadding(@Px int imageMessagePadding) {
-        this.parameters.imageMessagePadding = imageMessagePadding;
+        MessageParameters.Builder builder = this.parameters.edit();
+        builder.imageMessagePadding = imageMessagePadding;
+        this.setParameters(builder.build());
     }
 
     /**
@@ -399,7 +562,9 @@ public final class MessageThread extends ConstraintLayout {
      * @see PreviewMessage
      */
     public void setPreviewMessagePadding(@Px int previewMessagePadding) {
-        this.parameters.previewMessagePadding = previewMessagePadding;
+        MessageParameters.Builder builder = this.parameters.edit();
+        builder.previewMessagePadding = previewMessagePadding;
+        this.setParameters(builder.build());
     }
 
     /**
@@ -409,7 +574,9 @@ public final class MessageThread extends ConstraintLayout {
      * @param progressBarColor The color.
      */
     public void setProgressBarColor(@ColorInt int progressBarColor) {
-        this.parameters.progressBarColor = progressBarColor;
+        MessageParameters.Builder builder = this.parameters.edit();
+        builder.progressBarColor = progressBarColor;
+        this.setParameters(builder.build());
     }
 
     /**
@@ -419,7 +586,9 @@ public final class MessageThread extends ConstraintLayout {
      */
     @RequiresApi(Build.VERSION_CODES.LOLLIPOP)
     public void setElevation(float elevation) {
-        this.parameters.elevation = elevation;
+        MessageParameters.Builder builder = this.parameters.edit();
+        builder.elevation = elevation;
+        this.setParameters(builder.build());
     }
 
     /**
@@ -428,7 +597,9 @@ public final class MessageThread extends ConstraintLayout {
      * @param scale The scale.
      */
     public void setAvatarScale(MessageParameters.AvatarScale scale) {
-        this.parameters.avatarScale = scale.getValue();
+        MessageParameters.Builder builder = this.parameters.edit();
+        builder.avatarScale = scale.getValue();
+        this.setParameters(builder.build());
     }
 
     /**
@@ -437,7 +608,9 @@ public final class MessageThread extends ConstraintLayout {
      * @param scale The scale.
      */
     public void setAvatarScale(@Dimension int scale) {
-        this.parameters.avatarScale = scale;
+        MessageParameters.Builder builder = this.parameters.edit();
+        builder.avatarScale = scale;
+        this.setParameters(builder.build());
     }
 
     /**
@@ -446,7 +619,9 @@ public final class MessageThread extends ConstraintLayout {
      * @param shape The shape.
      */
     public void setAvatarShape(MessageParameters.AvatarShape shape) {
-        this.parameters.avatarShape = shape.getValue();
+        MessageParameters.Builder builder = this.parameters.edit();
+        builder.avatarShape = shape.getValue();
+        this.setParameters(builder.build());
     }
 
     /**
@@ -455,7 +630,9 @@ public final class MessageThread extends ConstraintLayout {
      * @param value True to display outgoing avatars.
      */
     public void setDisplayOutgoingAvatars(boolean value) {
-        this.parameters.displayOutgoingAvatars = value;
+        MessageParameters.Builder builder = this.parameters.edit();
+        builder.displayOutgoingAvatars = value;
+        this.setParameters(builder.build());
     }
 
     /**
@@ -464,7 +641,9 @@ public final class MessageThread extends ConstraintLayout {
      * @param value True to display incoming avatars.
      */
     public void setDisplayIncomingAvatars(boolean value) {
-        this.parameters.displayIncomingAvatars = value;
+        MessageParameters.Builder builder = this.parameters.edit();
+        builder.displayIncomingAvatars = value;
+        this.setParameters(builder.build());
     }
 
     /**
@@ -476,7 +655,9 @@ public final class MessageThread extends ConstraintLayout {
      * @param bottomFrom The BOTTOM FROM corner.
      */
     public void setMessageRadiusPx(float topFrom, float topTo, float bottomTo, float bottomFrom) {
-        this.parameters.setMessageRadiusPx(topFrom, topTo, bottomTo, bottomFrom);
+        this.setParameters(
+            this.parameters.edit().setMessageRadiusPx(topFrom, topTo, bottomTo, bottomFrom).build()
+        );
     }
 
     /**
@@ -485,7 +666,9 @@ public final class MessageThread extends ConstraintLayout {
      * @param enabled Whether or not to display date headers.
      */
     public void setDateHeaderEnabled(boolean enabled) {
-        this.parameters.dateHeaderEnabled = enabled;
+        MessageParameters.Builder builder = this.parameters.edit();
+        builder.dateHeaderEnabled = enabled;
+        this.setParameters(builder.build());
     }
 
     /**
@@ -494,7 +677,9 @@ public final class MessageThread extends ConstraintLayout {
      * @param color The color.
      */
     public void setDateHeaderColor(@ColorInt int color) {
-        this.parameters.dateHeaderColor = color;
+        MessageParameters.Builder builder = this.parameters.edit();
+        builder.dateHeaderColor = color;
+        this.setParameters(builder.build());
     }
 
     /**
@@ -503,7 +688,9 @@ public final class MessageThread extends ConstraintLayout {
      * @param minutes The number of minutes.
      */
     public void setDateHeaderSeparationMinutes(int minutes) {
-        this.parameters.dateHeaderSeparationMinutes = minutes;
+        MessageParameters.Builder builder = this.parameters.edit();
+        builder.dateHeaderSeparationMinutes = minutes;
+        this.setParameters(builder.build());
     }
 
     /**
@@ -512,7 +699,9 @@ public final class MessageThread extends ConstraintLayout {
      * @param font The font.
      */
     public void setMessageFont(Typeface font) {
-        this.parameters.messageFont = font;
+        MessageParameters.Builder builder = this.parameters.edit();
+        builder.messageFont = font;
+        this.setParameters(builder.build());
     }
 
     /**
@@ -521,7 +710,9 @@ public final class MessageThread extends ConstraintLayout {
      * @param font The font.
      */
     public void setDateFont(Typeface font) {
-        this.parameters.dateFont = font;
+        MessageParameters.Builder builder = this.parameters.edit();
+        builder.dateFont = font;
+        this.setParameters(builder.build());
     }
 
     /**
@@ -530,7 +721,9 @@ public final class MessageThread extends ConstraintLayout {
      * @param font The font.
      */
     public void setDateHeaderFont(Typeface font) {
-        this.parameters.dateHeaderFont = font;
+        MessageParameters.Builder builder = this.parameters.edit();
+        builder.dateHeaderFont = font;
+        this.setParameters(builder.build());
     }
 
     /**
@@ -539,7 +732,9 @@ public final class MessageThread extends ConstraintLayout {
      * @param valueInSp The font size in SP.
      */
     public void setMessageFontSizeSp(float valueInSp) {
-        this.parameters.messageFontSize = valueInSp;
+        MessageParameters.Builder builder = this.parameters.edit();
+        builder.messageFontSize = valueInSp;
+        this.setParameters(builder.build());
     }
 
     /**
@@ -548,7 +743,9 @@ public final class MessageThread extends ConstraintLayout {
      * @param valueInSp The font size in SP.
      */
     public void setDateFontSizeSp(float valueInSp) {
-        this.parameters.dateFontSize = valueInSp;
+        MessageParameters.Builder builder = this.parameters.edit();
+        builder.dateFontSize = valueInSp;
+        this.setParameters(builder.build());
     }
 
     /**
@@ -557,7 +754,45 @@ public final class MessageThread extends ConstraintLayout {
      * @param valueInSp The font size in SP.
      */
     public void setDateHeaderFontSizeSp(float valueInSp) {
-        this.parameters.dateHeaderFontSize = valueInSp;
+        MessageParameters.Builder builder = this.parameters.edit();
+        builder.dateHeaderFontSize = valueInSp;
+        this.setParameters(builder.build());
+    }
+
+    /**
+     * Sets the policy used when decoding images for Image messages.
+     * Defaults to {@link MessageParameters.DecodePolicy#Opaque}.
+     *
+     * @param policy The policy.
+     */
+    public void setImageDecodePolicy(@NonNull MessageParameters.DecodePolicy policy) {
+        MessageParameters.Builder builder = this.parameters.edit();
+        builder.imageDecodePolicy = policy;
+        this.setParameters(builder.build());
+    }
+
+    /**
+     * Sets the policy used when decoding avatars.
+     * Defaults to {@link MessageParameters.DecodePolicy#Opaque}.
+     *
+     * @param policy The policy.
+     */
+    public void setAvatarDecodePolicy(@NonNull MessageParameters.DecodePolicy policy) {
+        MessageParameters.Builder builder = this.parameters.edit();
+        builder.avatarDecodePolicy = policy;
+        this.setParameters(builder.build());
+    }
+
+    /**
+     * Sets the policy used when decoding images for Preview messages.
+     * Defaults to {@link MessageParameters.DecodePolicy#Opaque}.
+     *
+     * @param policy The policy.
+     */
+    public void setPreviewDecodePolicy(@NonNull MessageParameters.DecodePolicy policy) {
+        MessageParameters.Builder builder = this.parameters.edit();
+        builder.previewDecodePolicy = policy;
+        this.setParameters(builder.build());
     }
 
     /**
@@ -774,4 +1009,25 @@ public final class MessageThread extends ConstraintLayout {
     public float getDateHeaderFontSizeSp() {
         return this.parameters.getDateHeaderFontSizeSp();
     }
+
+    /**
+     * @return The policy used when decoding images for Image messages.
+     */
+    public MessageParameters.DecodePolicy getImageDecodePolicy() {
+        return this.parameters.getImageDecodePolicy();
+    }
+
+    /**
+     * @return The policy used when decoding avatars.
+     */
+    public MessageParameters.DecodePolicy getAvatarDecodePolicy() {
+        return this.parameters.getAvatarDecodePolicy();
+    }
+
+    /**
+     * @return The policy used when decoding images for Preview messages.
+     */
+    public MessageParameters.DecodePolicy getPreviewDecodePolicy() {
+        return this.parameters.getPreviewDecodePolicy();
+    }
 }
@@ -1,17 +1,21 @@
 package tk.nathanf.chatthread.components;
 
 import android.content.Context;
-import android.graphics.Bitmap;
 import android.graphics.drawable.GradientDrawable;
 import android.os.Build;
-import android.util.Log;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.format.DateUtils;
+import android.view.Choreographer;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.BaseAdapter;
+import android.widget.ListView;
 import android.widget.TextView;
 
 import androidx.annotation.LayoutRes;
+import androidx.annotation.Nullable;
 import androidx.constraintlayout.widget.ConstraintLayout;
 
 import com.makeramen.roundedimageview.RoundedImageView;
@@ -19,12 +23,17 @@ import com.makeramen.roundedimageview.RoundedImageView;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 import java.lang.RuntimeException;
 
 import tk.nathanf.chatthread.R;
+import tk.nathanf.chatthread.components.dates.MessageDateFormatter;
 import tk.nathanf.chatthread.components.messages.MessageTypes;
-import tk.nathanf.chatthread.util.Measure;
+import tk.nathanf.chatthread.util.TextStyle;
 
 /**
  * The adapter used for all MessageThreads.
@@ -34,6 +43,35 @@ import tk.nathanf.chatthread.util.Measure;
  */
 @SuppressWarnings({"unused", "WeakerAccess"})
 public class MessageThreadListAdapter extends BaseAdapter {
+    /**
+     * The date label of a Message, as it was formatted during a single minute.
+     */
+    private static final class DateLabel {
+        private final MessageDateFormatter formatter;
+        private final int formatterModificationCount;
+        private final long sentOn;
+        private final long minutesAgo;
+        private final String text;
+
+        DateLabel(MessageDateFormatter formatter, long sentOn, long minutesAgo, String text) {
+            this.formatter = formatter;
+            this.formatterModificationCount = formatter.getModificationCount();
+            this.sentOn = sentOn;
+            this.minutesAgo = minutesAgo;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Posts releases for Adapters that are used without a MessageThread.
+     */
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * The default number of Messages on either side of a bound row that are prefetched.
+     */
+    public static final int DEFAULT_PREFETCH_DISTANCE = 5;
+
     /**
      * The messages, if wrapping a List.
      */
@@ -55,6 +93,95 @@ public class MessageThreadListAdapter extends BaseAdapter {
      */
     private MessageThread owner;
 
+    /**
+     * The row View each Message is currently bound to.
+     */
+    private Map<Message, View> boundViews = new IdentityHashMap<>();
+
+    /**
+     * Messages that have lost their row and whose loads will be cancelled
+     * at the end of the current frame.
+     */
+    private Map<Message, Boolean> pendingRelease = new IdentityHashMap<>();
+
+    /**
+     * Whether or not a release of {@link MessageThreadListAdapter#pendingRelease} is posted.
+     */
+    private boolean releasePosted = false;
+
+    /**
+     * Messages whose rows need to be re-bound on the next frame.
+     */
+    private Map<Message, Boolean> changedMessages = new IdentityHashMap<>();
+
+    /**
+     * Authors whose rows need to be re-bound on the next frame.
+     */
+    private Map<Author, Boolean> changedAuthors = new IdentityHashMap<>();
+
+    /**
+     * Whether or not a frame callback for re-binding changed rows has been posted.
+     */
+    private boolean rebindPosted = false;
+
+    /**
+     * The date labels of the Messages bound to rows.
+     */
+    private Map<Message, DateLabel> dateLabels = new IdentityHashMap<>();
+
+    /**
+     * The version of the Parameters each row View was last styled with.
+     */
+    private Map<View, Integer> styledVersions = new WeakHashMap<>();
+
+    /**
+     * Whether or not the visible rows need to be styled with new Parameters on the next frame.
+     */
+    private boolean restylePending = false;
+
+    /**
+     * The time that every row bound in the current frame is dated relative to,
+     * or -1 if it has not been sampled yet in this frame.
+     */
+    private long frameTime = -1;
+
+    /**
+     * The number of Messages on either side of a bound row that are prefetched.
+     */
+    private int prefetchDistance = DEFAULT_PREFETCH_DISTANCE;
+
+    /**
+     * Releases the Messages that lost their row during the previous frame.
+     */
+    private final Runnable releaseRunnable = new Runnable() {
+        @Override
+        public void run() {
+            releasePending();
+        }
+    };
+
+    /**
+     * Re-binds the rows of all changed Messages and Authors that are currently visible.
+     */
+    private final Choreographer.FrameCallback rebindCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            rebindPosted = false;
+            rebindChangedRows();
+        }
+    };
+
+    /**
+     * Clears the time sampled for the previous frame.
+     */
+    private final Choreographer.FrameCallback frameTimeCallback =
+        new Choreographer.FrameCallback() {
+            @Override
+            public void doFrame(long frameTimeNanos) {
+                frameTime = -1;
+            }
+        };
+
     /**
      * Create an empty Adapter wrapping a {@link List<Message>}.
      */
@@ -81,7 +208,8 @@ public class MessageThreadListAdapter extends BaseAdapter {
     }
 
     /**
-     * Add a message to the bottom of the Thread and scroll the Thread to the bottom.
+     * Add a message to the bottom of the Thread and follow it if the Thread is
+     * scrolled to the bottom.
      *
      * @param message The Message.
      * @throws RuntimeException If this Adapter is wrapping a {@link MessageThreadAdapter}.
@@ -91,29 +219,22 @@ public class MessageThreadListAdapter extends BaseAdapter {
     }
 
     /**
-     * Add a message to the bottom of the Thread. If scroll is set to true, the Thread will be
-     * scrolled to the bottom.
+     * Add a message to the bottom of the Thread. If scroll is set to true and the Thread is
+     * scrolled to the bottom, it will follow the message. Otherwise, the message is counted
+     * as unread until it is scrolled to.
      *
      * @param message The Message.
      * @param scroll Whether or not to scroll to the bottom.
      * @throws RuntimeException If this Adapter is wrapping a {@link MessageThreadAdapter}.
+     * @see MessageThread#getUnreadCount()
      */
     public void addToBottom(Message message, boolean scroll) {
-        if (this.messages == null) {
-            throw new RuntimeException(
-                "Cannot add messages to a MessageThreadListAdapter " +
-                "that wraps a MessageThreadAdapter."
-            );
-        }
-        this.messages.add(message);
-        this.notifyDataSetChanged();
-        if (scroll) {
-            owner.scrollToBottom();
-        }
+        this.addToBottom(new Message[] {message}, scroll);
     }
 
     /**
-     * Add a group of Messages to the bottom of the Thread and scroll the Thread to the bottom.
+     * Add a group of Messages to the bottom of the Thread and follow them if the
+     * Thread is scrolled to the bottom.
      *
      * @param messages The Message.
      * @throws RuntimeException If this Adapter is wrapping a {@link MessageThreadAdapter}.
@@ -123,16 +244,30 @@ public class MessageThreadListAdapter extends BaseAdapter {
     }
 
     /**
-     * Add a group of Messages to the bottom of the Thread. If scroll is set to true,
-     * the Thread will be scrolled to the bottom.
+     * Add a group of Messages to the bottom of the Thread. If scroll is set to true and
+     * the Thread is scrolled to the bottom, it will follow the messages. Otherwise, the
+     * messages are counted as unread until they are scrolled to.
      *
      * @param messages The Message.
      * @param scroll Whether or not to scroll to the bottom.
      * @throws RuntimeException If this Adapter is wrapping a {@link MessageThreadAdapter}.
+     * @see MessageThread#getUnreadCount()
      */
     public void addToBottom(Message[] messages, boolean scroll) {
-        for (Message message : messages) {
-            this.addToBottom(message, scroll);
+        if (this.messages == null) {
+            throw new RuntimeException(
+                "Cannot add messages to a MessageThreadListAdapter " +
+                "that wraps a MessageThreadAdapter."
+            );
+        }
+
+        if (messages.length < 1) return;
+
+        int previousCount = this.messages.size();
+        Collections.addAll(this.messages, messages);
+        this.notifyDataSetChanged();
+        if (this.owner != null) {
+            this.owner.onAddedToBottom(previousCount, messages.length, scroll);
         }
     }
 
@@ -185,10 +320,346 @@ public class MessageThreadListAdapter extends BaseAdapter {
                 "that wraps a MessageThreadAdapter."
             );
         }
-        this.messages.remove(position);
+        Message message = this.messages.remove(position);
+        if (message != null) {
+            this.boundViews.remove(message);
+            this.pendingRelease.remove(message);
+            this.dateLabels.remove(message);
+            message.cancelLoading();
+            message.release();
+        }
         this.notifyDataSetChanged();
     }
 
+    /**
+     * Called when a row View has been moved to the scrap heap by the ListView.
+     * Any loads started by the Message bound to the View will be cancelled unless
+     * the Message is bound again before the next frame.
+     *
+     * @param view The row View.
+     */
+    void onRowRecycled(View view) {
+        Object tag = view.getTag();
+        if (tag instanceof Message && this.boundViews.get(tag) == view) {
+            this.boundViews.remove(tag);
+            this.releaseLater((Message) tag);
+        }
+    }
+
+    /**
+     * Bind a Message to a row View, releasing the Message previously bound to it.
+     *
+     * @param message The Message.
+     * @param view    The row View.
+     */
+    private void bindRow(Message message, View view) {
+        Object tag = view.getTag();
+        if (tag != message && tag instanceof Message && this.boundViews.get(tag) == view) {
+            this.boundViews.remove(tag);
+            this.releaseLater((Message) tag);
+        }
+
+        view.setTag(message);
+        this.boundViews.put(message, view);
+        this.pendingRelease.remove(message);
+    }
+
+    /**
+     * Set the number of Messages on either side of a bound row whose content is
+     * loaded ahead of time with {@link Message#prefetch()}.
+     * Defaults to {@link MessageThreadListAdapter#DEFAULT_PREFETCH_DISTANCE}.
+     *
+     * @param prefetchDistance The distance, or 0 to only load Messages once they are bound.
+     */
+    public void setPrefetchDistance(int prefetchDistance) {
+        this.prefetchDistance = Math.max(0, prefetchDistance);
+    }
+
+    /**
+     * Retrieve the number of Messages on either side of a bound row that are prefetched.
+     *
+     * @return The distance.
+     */
+    public int getPrefetchDistance() {
+        return this.prefetchDistance;
+    }
+
+    /**
+     * Prefetch the Messages within the prefetch distance of a row.
+     *
+     * @param position The position of the row.
+     */
+    private void prefetchAround(int position) {
+        int first = Math.max(0, position - this.prefetchDistance);
+        int last = Math.min(this.getCount() - 1, position + this.prefetchDistance);
+        for (int i = first; i <= last; i++) {
+            if (i != position) {
+                Message message = this.getItem(i);
+                if (message != null) {
+                    message.prefetch();
+                }
+            }
+        }
+    }
+
+    /**
+     * Cancel the loads of a Message that is no longer bound to a row once the current
+     * frame has finished. When the ListView rebuilds its rows, every View is moved to the
+     * scrap heap and re-bound in the same pass, so Messages that are still on screen are
+     * bound again before this runs and keep their loads.
+     *
+     * @param message The Message.
+     */
+    private void releaseLater(Message message) {
+        this.pendingRelease.put(message, Boolean.TRUE);
+        if (this.releasePosted) {
+            return;
+        }
+
+        // Adapters that are used without a MessageThread release on the main thread.
+        this.releasePosted = true;
+        if (this.owner != null) {
+            this.owner.post(this.releaseRunnable);
+        } else {
+            mainHandler.post(this.releaseRunnable);
+        }
+    }
+
+    /**
+     * Cancel the loads of every Message in {@link MessageThreadListAdapter#pendingRelease}
+     * that has not been bound again, and the avatar loads of their Authors if no bound
+     * Message is by them.
+     */
+    private void releasePending() {
+        this.releasePosted = false;
+        Map<Author, Boolean> authors = new IdentityHashMap<>();
+        for (Message released : this.pendingRelease.keySet()) {
+            if (!this.boundViews.containsKey(released)) {
+                this.dateLabels.remove(released);
+                released.cancelLoading();
+                authors.put(released.getAuthor(), Boolean.TRUE);
+            }
+        }
+        this.pendingRelease.clear();
+
+        if (authors.isEmpty()) {
+            return;
+        }
+
+        for (Message bound : this.boundViews.keySet()) {
+            authors.remove(bound.getAuthor());
+        }
+        for (Author author : authors.keySet()) {
+            author.cancelAvatarLoading();
+        }
+    }
+
+    /**
+     * Notify the adapter that the content of a single Message has changed, i.e. because
+     * an asynchronous load has completed. Only the row displaying the Message will be
+     * re-bound, and all changes made within the same frame are applied together.
+     *
+     * @param message The Message.
+     */
+    public void notifyMessageChanged(Message message) {
+        this.changedMessages.put(message, Boolean.TRUE);
+        this.scheduleRebind();
+    }
+
+    /**
+     * Notify the adapter that an Author has changed, i.e. because their avatar has
+     * finished loading. Only the rows displaying Messages by the Author will be re-bound,
+     * and all changes made within the same frame are applied together.
+     *
+     * @param author The Author.
+     */
+    public void notifyAuthorChanged(Author author) {
+        this.changedAuthors.put(author, Boolean.TRUE);
+        this.scheduleRebind();
+    }
+
+    /**
+     * Called when the MessageThread has published new Parameters. The visible rows are
+     * styled with them together on the next frame, no matter how many times the
+     * Parameters changed in between, and are not re-bound. Rows that are not visible
+     * are styled when they are next bound.
+     */
+    void onParametersChanged() {
+        this.restylePending = true;
+        this.scheduleRebind();
+    }
+
+    /**
+     * Schedule the changed rows to be re-bound on the next frame.
+     */
+    private void scheduleRebind() {
+        if (!this.rebindPosted) {
+            this.rebindPosted = true;
+            Choreographer.getInstance().postFrameCallback(this.rebindCallback);
+        }
+    }
+
+    /**
+     * Re-bind the visible rows of all changed Messages and Authors, and restyle the other
+     * visible rows if the Parameters have changed. Rows that are not visible are skipped,
+     * they will pick up the change when they are next bound.
+     */
+    private void rebindChangedRows() {
+        boolean restyle = this.restylePending;
+        this.restylePending = false;
+        if (this.owner == null || this.owner.messageThreadView.getAdapter() != this) {
+            this.changedMessages.clear();
+            this.changedAuthors.clear();
+            return;
+        }
+
+        MessageParameters params = this.owner.parameters;
+
+        ListView listView = this.owner.messageThreadView;
+        int first = listView.getFirstVisiblePosition();
+        for (int i = 0; i < listView.getChildCount(); i++) {
+            View row = listView.getChildAt(i);
+            Object tag = row.getTag();
+            if (!(tag instanceof Message)) {
+                continue;
+            }
+
+            Message message = (Message) tag;
+            if (message.getPosition() != first + i) {
+                continue;
+            }
+
+            if (
+                this.changedMessages.containsKey(message) ||
+                this.changedAuthors.containsKey(message.getAuthor())
+            ) {
+                this.getView(message.getPosition(), row, listView);
+            } else if (restyle) {
+                Integer styledVersion = this.styledVersions.get(row);
+                if (styledVersion == null || styledVersion != params.getVersion()) {
+                    this.styleRow(message, row, params);
+
+                    // The avatar may have just been enabled for this row.
+                    RoundedImageView avatar = row.findViewById(R.id.ownerImage);
+                    if (avatar.getVisibility() == View.VISIBLE) {
+                        avatar.setImageBitmap(message.getAuthor().getAvatar(this));
+                    }
+                }
+            }
+        }
+
+        this.changedMessages.clear();
+        this.changedAuthors.clear();
+    }
+
+    /**
+     * Retrieve the time that the rows bound in the current frame are dated relative to.
+     * The time is read from the Clock of the Date Formatter once per frame, so every
+     * row bound in the same layout pass agrees on the current time.
+     *
+     * @param formatter The Date Formatter.
+     * @return The time, in milliseconds since the epoch.
+     */
+    private long getFrameTime(MessageDateFormatter formatter) {
+        if (this.frameTime == -1) {
+            this.frameTime = formatter.now();
+            Choreographer.getInstance().postFrameCallback(this.frameTimeCallback);
+        }
+        return this.frameTime;
+    }
+
+    /**
+     * Retrieve the date label of a Message. Labels are only formatted again once the
+     * number of minutes since the Message was sent has changed, or the Date Formatter
+     * has been replaced or changed.
+     *
+     * @param message   The Message.
+     * @param formatter The Date Formatter.
+     * @param now       The current time, in milliseconds.
+     * @return The label.
+     */
+    private String getDateLabel(Message message, MessageDateFormatter formatter, long now) {
+        long sentOn = message.getSentOnMillis();
+        long minutesAgo = (now - sentOn) / DateUtils.MINUTE_IN_MILLIS;
+        DateLabel label = this.dateLabels.get(message);
+        if (
+            label == null || label.formatter != formatter ||
+            label.formatterModificationCount != formatter.getModificationCount() ||
+            label.sentOn != sentOn || label.minutesAgo != minutesAgo
+        ) {
+            label = new DateLabel(
+                formatter, sentOn, minutesAgo, formatter.format(new Date(sentOn), now)
+            );
+            this.dateLabels.put(message, label);
+        }
+        return label.text;
+    }
+
+    /**
+     * Called when the Date Formatter of the MessageThread has been replaced. The cached
+     * date labels are dropped and the labels of the visible rows are formatted again,
+     * without re-binding the rows.
+     */
+    void onDateFormatterChanged() {
+        this.dateLabels.clear();
+        this.frameTime = -1;
+        this.refreshDateLabels();
+    }
+
+    /**
+     * Update the date labels and date headers of the visible rows. Only the labels
+     * whose text has changed since they were bound are set, and no rows are re-bound.
+     * Called by the MessageThread once a minute while it is attached to a window.
+     */
+    void refreshDateLabels() {
+        if (this.owner == null || this.owner.messageThreadView.getAdapter() != this) {
+            return;
+        }
+
+        MessageDateFormatter formatter = this.owner.parameters.getDateFormatter();
+        long now = this.getFrameTime(formatter);
+        ListView listView = this.owner.messageThreadView;
+        int first = listView.getFirstVisiblePosition();
+        for (int i = 0; i < listView.getChildCount(); i++) {
+            View row = listView.getChildAt(i);
+            Object tag = row.getTag();
+            if (!(tag instanceof Message) || ((Message) tag).getPosition() != first + i) {
+                continue;
+            }
+
+            Message message = (Message) tag;
+            String label = this.getDateLabel(message, formatter, now);
+
+            TextView dateContainer = row.findViewById(R.id.date);
+            if (dateContainer != null) {
+                TextStyle.setText(dateContainer, label);
+
+                // The date of the last Message is shown once it is over a minute old.
+                if (
+                    message.getPosition() == this.getCount() - 1 &&
+                    dateContainer.getVisibility() != View.VISIBLE &&
+                    formatter.getMinutesAgo(message.getSentOnMillis(), now) > 1
+                ) {
+                    dateContainer.setVisibility(View.VISIBLE);
+                }
+            }
+
+            TextView dateHeader = row.findViewById(R.id.dateHeader);
+            if (dateHeader != null && dateHeader.getVisibility() == View.VISIBLE) {
+                TextStyle.setText(dateHeader, label);
+            }
+        }
+    }
+
+    /**
+     * Retrieve the Parameters of the MessageThread this Adapter belongs to, if any.
+     *
+     * @return The Parameters.
+     */
+    public @Nullable MessageParameters getParameters() {
+        return this.owner == null ? null : this.owner.parameters;
+    }
+
     /**
      * Set the Owner MessageThread for this Adapter.
      *
@@ -305,7 +776,7 @@ public class MessageThreadListAdapter extends BaseAdapter {
 
         // Define our main views.
         View view = recycled;
-        ConstraintLayout messageContainer = null;
+        ConstraintLayout messageContainer;
 
         // Check if we are creating a new view or re-populating an existing view.
         if (view == null) {
@@ -317,42 +788,22 @@ public class MessageThreadListAdapter extends BaseAdapter {
                 throw new RuntimeException("Unable to bind to the Layout Inflater service.");
             }
 
-            float[] containerRadius;
-            int containerColor;
-            @LayoutRes int layoutResource;
-
             // Determine if this is a SELF message or an OTHER message
-            // and based on the result initialize the containerRadius,
-            // containerColor and layoutResource variables.
-            if (message.getAuthor().getSource() == Message.Source.Self) {
-                float[] rads = message.getRadius(params);
-                layoutResource = R.layout.message_thread_outgoing_element;
-                containerRadius = new float[] {
-                    rads[1], rads[1], rads[0], rads[0],
-                    rads[3], rads[3], rads[2], rads[2]
-                };
-                containerColor = params.getSentColor();
-            } else {
-                float[] rads = message.getRadius(params);
-                layoutResource = R.layout.message_thread_incoming_element;
-                containerRadius = new float[] {
-                    rads[0], rads[0], rads[1], rads[1],
-                    rads[2], rads[2], rads[3], rads[3]
-                };
-                containerColor = params.getReceivedColor();
-            }
+            // and based on the result initialize the layoutResource.
+            @LayoutRes int layoutResource =
+                (message.getAuthor().getSource() == Message.Source.Self)
+                    ? R.layout.message_thread_outgoing_element
+                    : R.layout.message_thread_incoming_element;
 
             // Inflate the outgoing message element.
             view = inflater.inflate(
                 layoutResource, parent, false
             );
 
-            // Generate the drawable for the background of the element
-            // using the radius and color defined in the parameters.
+            // Generate the drawable for the background of the element,
+            // it is colored when the row is styled.
             GradientDrawable drawable = new GradientDrawable();
             drawable.setShape(GradientDrawable.RECTANGLE);
-            drawable.setCornerRadii(containerRadius);
-            drawable.setColor(containerColor);
 
             // Retrieve the Message Container.
             messageContainer = view.findViewById(R.id.message_container);
@@ -362,89 +813,39 @@ public class MessageThreadListAdapter extends BaseAdapter {
 
             // Generate the View for the message based on the Message Type.
             messageContainer.addView(message.createView(params, messageContainer));
+        } else {
+            messageContainer = view.findViewById(R.id.message_container);
+        }
 
-            // Set the padding for the Message Container.
-            int[] padding = message.getPadding(params);
-            messageContainer.setPadding(padding[0], padding[1], padding[2], padding[3]);
+        // Track which Message this View is bound to.
+        this.bindRow(message, view);
+        this.prefetchAround(position);
 
-            // Set the minimum height and width for the container.
-            messageContainer.setMinHeight(message.getMinHeight(params));
-            messageContainer.setMinWidth(message.getMinWidth(params));
+        // Style the View if it has not been styled with the current Parameters. The
+        // shape of the container can differ for every Message, so it is always applied.
+        Integer styledVersion = this.styledVersions.get(view);
+        if (styledVersion == null || styledVersion != params.getVersion()) {
+            this.styleRow(message, view, params);
+        } else {
+            this.shapeContainer(message, messageContainer, params);
         }
 
         // Populate View.
 
         // Load the necessary views to be populated.
         RoundedImageView circleImageView = view.findViewById(R.id.ownerImage);
-        messageContainer = (messageContainer != null)
-                ? messageContainer : (ConstraintLayout)view.findViewById(R.id.message_container);
-
-        // Generate placeholder values for DP measurements.
-        int dp16 = (int)Measure.dp16(context);
-        int dp8 = (int)Measure.dp8(context);
-        int dpPp = (int)Measure.dpToPx(params.getAvatarScale(), context);
-
-        // Determine if this is a SELF or OTHER message.
-        if (message.getAuthor().getSource() == Message.Source.Self) {
-            // Determine if we should display OUTGOING avatars.
-            if (params.shouldDisplayOutgoingAvatars()) {
-                // Configure the Avatar.
-                circleImageView.setVisibility(View.VISIBLE);
-                if (params.avatarShape == 2) {
-                    circleImageView.setCornerRadius(10);
-                } else if (params.avatarShape == 1) {
-                    circleImageView.setCornerRadius(0);
-                } else {
-                    circleImageView.setCornerRadius((float)(dpPp / 2));
-                }
-                ((ConstraintLayout.LayoutParams)messageContainer.getLayoutParams()).setMarginEnd(
-                        dp8
-                );
-                circleImageView.setImageBitmap(message.getAuthor().getAvatar(this));
-            } else {
-                circleImageView.setVisibility(View.GONE);
-                ((ConstraintLayout.LayoutParams)messageContainer.getLayoutParams()).setMarginEnd(
-                    dp16
-                );
-            }
-        } else {
-            // Determine if we should display INCOMING avatars.
-            if (params.shouldDisplayIncomingAvatars()) {
-                // Configure the Avatar
-                circleImageView.setVisibility(View.VISIBLE);
-                if (params.avatarShape == 2) {
-                    circleImageView.setCornerRadius(dp8);
-                } else if (params.avatarShape == 1) {
-                    circleImageView.setCornerRadius(0);
-                } else {
-                    circleImageView.setCornerRadius((float)(dpPp / 2));
-                }
-                ((ConstraintLayout.LayoutParams)messageContainer.getLayoutParams()).setMarginStart(
-                        dp8
-                );
-                circleImageView.setImageBitmap(message.getAuthor().getAvatar(this));
-                Bitmap authorMb = message.getAuthor().getAvatar(this);
-                if (authorMb != null) {
-                    Log.d("PPD", "Found author BM");
-                }
-            } else {
-                // Configure the Avatar
-                circleImageView.setVisibility(View.GONE);
-                ((ConstraintLayout.LayoutParams)messageContainer.getLayoutParams()).setMarginStart(
-                        dp16
-                );
-            }
+        if (circleImageView.getVisibility() == View.VISIBLE) {
+            circleImageView.setImageBitmap(message.getAuthor().getAvatar(this));
         }
 
         // Configure the Date Message.
+        long now = this.getFrameTime(params.getDateFormatter());
+        String dateLabel = this.getDateLabel(message, params.getDateFormatter(), now);
         final TextView dateContainer = view.findViewById(R.id.date);
-        dateContainer.setTextColor(params.getDateColor());
-        dateContainer.setText(params.getDateFormatter().format(message.getSentOn()));
-        dateContainer.setTypeface(params.getDateFont());
-        dateContainer.setTextSize(params.getDateFontSizeSp());
+        TextStyle.setText(dateContainer, dateLabel);
         if (visibleDates.contains(position) || (
             position == this.getCount() - 1 &&
-            params.getDateFormatter().getMinutesAgo(message.getSentOn()) > 1
+            params.getDateFormatter().getMinutesAgo(message.getSentOnMillis(), now) > 1
         )) {
             dateContainer.setVisibility(View.VISIBLE);
         } else {
@@ -454,20 +855,17 @@ public class MessageThreadListAdapter extends BaseAdapter {
         // Configure the Date Header
         TextView dateHeader = view.findViewById(R.id.dateHeader);
         if (params.isDateHeaderEnabled()) {
-            dateHeader.setTypeface(params.getDateHeaderFont());
-            dateHeader.setTextSize(params.getDateHeaderFontSizeSp());
-            dateHeader.setTextColor(params.getDateHeaderColor());
             Message lastMessage = getItem(position - 1);
             if (lastMessage == null) {
                 dateHeader.setVisibility(View.VISIBLE);
-                dateHeader.setText(params.getDateFormatter().format(message.getSentOn()));
+                TextStyle.setText(dateHeader, dateLabel);
             } else {
                 long minutesBetween = params.getDateFormatter().getMinutesBetween(
-                        lastMessage.getSentOn(), message.getSentOn()
+                        lastMessage.getSentOnMillis(), message.getSentOnMillis()
                 );
                 if (minutesBetween >= params.getDateHeaderSeparationMinutes()) {
                     dateHeader.setVisibility(View.VISIBLE);
-                    dateHeader.setText(params.getDateFormatter().format(message.getSentOn()));
+                    TextStyle.setText(dateHeader, dateLabel);
                 } else {
                     dateHeader.setVisibility(View.GONE);
                 }
@@ -490,20 +888,144 @@ public class MessageThreadListAdapter extends BaseAdapter {
             }
         });
 
+        // Populate the View based on the Message Type. The setters used
+        // while binding request a layout themselves when anything changed.
+        message.bindView(params, messageContainer.getChildAt(0));
+
+        // Return the View.
+        return view;
+    }
+
+    /**
+     * Apply the Parameters to a row View: the colors and elevation of the message container,
+     * the avatar, the fonts of the date and date header, and the style of the Message Type's
+     * own View through {@link Message#styleView(MessageParameters, View)}.
+     *
+     * Everything applied here only depends on the Parameters and the View type of the row,
+     * so a row only needs to be styled again once the Parameters change. The shape of the
+     * container is applied as well, but it is also applied on every bind, see
+     * {@link #shapeContainer(Message, ConstraintLayout, MessageParameters)}.
+     *
+     * @param message The Message bound to the row.
+     * @param view    The row View.
+     * @param params  The Parameters.
+     */
+    private void styleRow(Message message, View view, MessageParameters params) {
+        ConstraintLayout messageContainer = view.findViewById(R.id.message_container);
+        RoundedImageView circleImageView = view.findViewById(R.id.ownerImage);
+        ConstraintLayout.LayoutParams containerLayout =
+            (ConstraintLayout.LayoutParams)messageContainer.getLayoutParams();
+
+        // Read the DP measurements resolved for the Parameters.
+        MessageParameters.Dimensions dimensions = params.getDimensions();
+        int dp16 = dimensions.getDp16();
+        int dp8 = dimensions.getDp8();
+        int dpPp = dimensions.getAvatarSize();
+
+        // Color the background of the container using the color defined in the parameters.
+        GradientDrawable drawable = (GradientDrawable)messageContainer.getBackground();
+
+        // Determine if this is a SELF or OTHER message.
+        if (message.getAuthor().getSource() == Message.Source.Self) {
+            drawable.setColor(params.getSentColor());
+
+            // Determine if we should display OUTGOING avatars.
+            if (params.shouldDisplayOutgoingAvatars()) {
+                // Configure the Avatar.
+                circleImageView.setVisibility(View.VISIBLE);
+                if (params.avatarShape == 2) {
+                    circleImageView.setCornerRadius(10);
+                } else if (params.avatarShape == 1) {
+                    circleImageView.setCornerRadius(0);
+                } else {
+                    circleImageView.setCornerRadius((float)(dpPp / 2));
+                }
+                containerLayout.setMarginEnd(dp8);
+            } else {
+                circleImageView.setVisibility(View.GONE);
+                containerLayout.setMarginEnd(dp16);
+            }
+        } else {
+            drawable.setColor(params.getReceivedColor());
+
+            // Determine if we should display INCOMING avatars.
+            if (params.shouldDisplayIncomingAvatars()) {
+                // Configure the Avatar
+                circleImageView.setVisibility(View.VISIBLE);
+                if (params.avatarShape == 2) {
+                    circleImageView.setCornerRadius(dp8);
+                } else if (params.avatarShape == 1) {
+                    circleImageView.setCornerRadius(0);
+                } else {
+                    circleImageView.setCornerRadius((float)(dpPp / 2));
+                }
+                containerLayout.setMarginStart(dp8);
+            } else {
+                // Configure the Avatar
+                circleImageView.setVisibility(View.GONE);
+                containerLayout.setMarginStart(dp16);
+            }
+        }
+        messageContainer.setLayoutParams(containerLayout);
+        this.shapeContainer(message, messageContainer, params);
+
         // Configure the Elevation
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
             messageContainer.setElevation(params.getElevation());
         }
 
-        // Populate the View based on the Message Type.
-        message.bindView(params, messageContainer.getChildAt(0));
+        // Configure the Date Message.
+        TextView dateContainer = view.findViewById(R.id.date);
+        TextStyle.setTextColor(dateContainer, params.getDateColor());
+        TextStyle.setTypeface(dateContainer, params.getDateFont());
+        TextStyle.setTextSizeSp(dateContainer, params.getDateFontSizeSp());
 
-        // Request Layouts
-        circleImageView.requestLayout();
-        messageContainer.requestLayout();
-        view.requestLayout();
+        // Configure the Date Header
+        TextView dateHeader = view.findViewById(R.id.dateHeader);
+        TextStyle.setTypeface(dateHeader, params.getDateHeaderFont());
+        TextStyle.setTextSizeSp(dateHeader, params.getDateHeaderFontSizeSp());
+        TextStyle.setTextColor(dateHeader, params.getDateHeaderColor());
 
-        // Return the View.
-        return view;
+        // Style the View based on the Message Type.
+        message.styleView(params, messageContainer.getChildAt(0));
+
+        this.styledVersions.put(view, params.getVersion());
+    }
+
+    /**
+     * Apply the corner radii, padding and minimum size of a Message to its container.
+     * These come from {@link Message#getRadius(MessageParameters)},
+     * {@link Message#getPadding(MessageParameters)} and the minimum size getters, which may
+     * differ for every Message, i.e. for grouped messages, so they are applied on every bind.
+     * The padding and minimum size setters only request a layout when the value changed.
+     *
+     * @param message          The Message bound to the row.
+     * @param messageContainer The message container of the row.
+     * @param params           The Parameters.
+     */
+    private void shapeContainer(
+        Message message, ConstraintLayout messageContainer, MessageParameters params
+    ) {
+        float[] rads = message.getRadius(params);
+        GradientDrawable drawable = (GradientDrawable)messageContainer.getBackground();
+        if (message.getAuthor().getSource() == Message.Source.Self) {
+            drawable.setCornerRadii(new float[] {
+                rads[1], rads[1], rads[0], rads[0],
+                rads[3], rads[3], rads[2], rads[2]
+            });
+        } else {
+            drawable.setCornerRadii(new float[] {
+                rads[0], rads[0], rads[1], rads[1],
+                rads[2], rads[2], rads[3], rads[3]
+            });
+        }
+
+        // Set the padding for the Message Container.
+        int[] padding = message.getPadding(params);
+        messageContainer.setPadding(padding[0], padding[1], padding[2], padding[3]);
+
+        // Set the minimum height and width for the container.
+        messageContainer.setMinHeight(message.getMinHeight(params));
+        messageContainer.setMinWidth(message.getMinWidth(params));
     }
 }
@@ -0,0 +1,551 @@
+package tk.nathanf.chatthread.components;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.graphics.Typeface;
+import android.util.AttributeSet;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.content.res.ResourcesCompat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import tk.nathanf.chatthread.R;
+import tk.nathanf.chatthread.components.dates.DefaultMessageDateFormatter;
+import tk.nathanf.chatthread.components.dates.MessageDateFormatter;
+import tk.nathanf.chatthread.components.loading.LoadHandle;
+import tk.nathanf.chatthread.components.loading.Loader;
+import tk.nathanf.chatthread.util.Measure;
+
+/**
+ * The styled attributes of a MessageThread, resolved against a theme.
+ *
+ * Resolving the attributes of a MessageThread reads about thirty values from its theme.
+ * Presets are cached for each theme, so every MessageThread inflated with the same theme,
+ * style and display configuration shares a single preset and only the first one resolves
+ * it. MessageThreads that set any of their attributes directly in the layout get a preset
+ * of their own.
+ *
+ * Fonts are not loaded while resolving a preset. They are loaded in the background the
+ * first time a MessageThread asks for them, and the MessageThread uses the default
+ * Typeface until they have loaded.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class StylePreset {
+    /**
+     * Listener notified when the fonts of a preset have finished loading.
+     */
+    interface Listener {
+        /**
+         * Called on the main thread once the fonts have loaded.
+         *
+         * @param preset The preset.
+         */
+        void onFontsLoaded(@NonNull StylePreset preset);
+    }
+
+    /**
+     * Identifies a preset within a theme.
+     */
+    private static final class Key {
+        private final int style;
+        private final int defStyleAttr;
+        private final int densityDpi;
+        private final float fontScale;
+
+        Key(int style, int defStyleAttr, int densityDpi, float fontScale) {
+            this.style = style;
+            this.defStyleAttr = defStyleAttr;
+            this.densityDpi = densityDpi;
+            this.fontScale = fontScale;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            Key key = (Key) o;
+            return style == key.style && defStyleAttr == key.defStyleAttr &&
+                densityDpi == key.densityDpi && fontScale == key.fontScale;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = style;
+            result = 31 * result + defStyleAttr;
+            result = 31 * result + densityDpi;
+            result = 31 * result + Float.floatToIntBits(fontScale);
+            return result;
+        }
+    }
+
+    /**
+     * The presets of each theme. Themes are held weakly, so the presets of an
+     * Activity are dropped along with it.
+     */
+    private static final Map<Resources.Theme, Map<Key, StylePreset>> cache =
+        new WeakHashMap<>();
+
+    private final int sentColor;
+    private final int sentTextColor;
+    private final int receivedColor;
+    private final int receivedTextColor;
+    private final int dateColor;
+    private final float messageRadiusTopFrom;
+    private final float messageRadiusBottomFrom;
+    private final float messageRadiusTopTo;
+    private final float messageRadiusBottomTo;
+    private final int textMessagePadding;
+    private final int imageMessagePadding;
+    private final int previewMessagePadding;
+    private final int progressBarColor;
+    private final float elevation;
+    private final int avatarScale;
+    private final int avatarShape;
+    private final boolean displayIncomingAvatars;
+    private final boolean displayOutgoingAvatars;
+    private final boolean dateHeaderEnabled;
+    private final int dateHeaderColor;
+    private final int dateHeaderSeparation;
+    private final float messageFontSize;
+    private final float dateFontSize;
+    private final float dateHeaderFontSize;
+    private final String dateFormat;
+    private final int dateFlags;
+
+    /**
+     * The font resources, or 0 for the default Typeface.
+     */
+    private final int messageFontRes;
+    private final int dateFontRes;
+    private final int dateHeaderFontRes;
+
+    /**
+     * The loaded fonts, guarded by this preset.
+     */
+    private Typeface messageFont;
+    private Typeface dateFont;
+    private Typeface dateHeaderFont;
+    private boolean fontsLoaded;
+    private LoadHandle fontsHandle;
+    private final ArrayList<Listener> listeners = new ArrayList<>(1);
+
+    /**
+     * Resolve a preset from a TypedArray of {@link R.styleable#MessageThread}.
+     *
+     * @param context    The Context.
+     * @param typedArray The TypedArray.
+     */
+    private StylePreset(Context context, TypedArray typedArray) {
+        float dp3 = Measure.dpToPx(16, context);
+        this.elevation = typedArray.getDimension(
+            R.styleable.MessageThread_mt_elevation,
+            dp3
+        );
+
+        float dp16 = Measure.dpToPx(16, context);
+        this.messageRadiusTopFrom = typedArray.getDimension(
+            R.styleable.MessageThread_mt_message_radius_top_from,
+            dp16
+        );
+        this.messageRadiusTopTo = typedArray.getDimension(
+            R.styleable.MessageThread_mt_message_radius_top_to,
+            dp16
+        );
+        this.messageRadiusBottomFrom = typedArray.getDimension(
+            R.styleable.MessageThread_mt_message_radius_bottom_from,
+            dp16
+        );
+        this.messageRadiusBottomTo = typedArray.getDimension(
+            R.styleable.MessageThread_mt_message_radius_bottom_to,
+            dp16
+        );
+
+        this.textMessagePadding = (int)typedArray.getDimension(
+            R.styleable.MessageThread_mt_text_message_padding,
+            dp16
+        );
+
+        this.imageMessagePadding = (int)typedArray.getDimension(
+            R.styleable.MessageThread_mt_image_message_padding,
+            0
+        );
+
+        this.previewMessagePadding = (int)typedArray.getDimension(
+            R.styleable.MessageThread_mt_preview_message_padding,
+            0
+        );
+
+        this.receivedColor = typedArray.getColor(
+            R.styleable.MessageThread_mt_received_color,
+            context.getResources().getColor(R.color.default_received)
+        );
+
+        this.sentColor = typedArray.getColor(
+            R.styleable.MessageThread_mt_sent_color,
+            context.getResources().getColor(R.color.default_sent)
+        );
+
+        this.receivedTextColor = typedArray.getColor(
+            R.styleable.MessageThread_mt_received_text_color,
+            context.getResources().getColor(R.color.default_received_text)
+        );
+
+        this.sentTextColor = typedArray.getColor(
+            R.styleable.MessageThread_mt_sent_text_color,
+            context.getResources().getColor(R.color.default_sent_text)
+        );
+
+        this.dateColor = typedArray.getColor(
+            R.styleable.MessageThread_mt_date_color,
+            context.getResources().getColor(R.color.default_date_color)
+        );
+
+        this.displayOutgoingAvatars = typedArray.getBoolean(
+            R.styleable.MessageThread_mt_display_outgoing_avatars,
+            false
+        );
+
+        this.displayIncomingAvatars = typedArray.getBoolean(
+            R.styleable.MessageThread_mt_display_incoming_avatars,
+            true
+        );
+
+        this.avatarScale = typedArray.getInt(R.styleable.MessageThread_mt_avatar_scale, 40);
+        this.avatarShape = typedArray.getInt(R.styleable.MessageThread_mt_avatar_shape, 0);
+
+        this.progressBarColor = typedArray.getColor(
+            R.styleable.MessageThread_mt_progress_bar_color,
+            context.getResources().getColor(R.color.default_progress_bar_color)
+        );
+
+        boolean allow_minutes = typedArray.getBoolean(
+            R.styleable.MessageThread_mt_date_format_minutes, true
+        );
+
+        boolean allow_days = typedArray.getBoolean(
+            R.styleable.MessageThread_mt_date_format_days, true
+        );
+
+        this.dateHeaderEnabled = typedArray.getBoolean(
+            R.styleable.MessageThread_mt_date_header_enabled,
+            true
+        );
+
+        this.dateHeaderColor = typedArray.getColor(
+            R.styleable.MessageThread_mt_date_header_color,
+            context.getResources().getColor(R.color.default_date_header_color)
+        );
+
+        this.dateHeaderSeparation = typedArray.getInteger(
+            R.styleable.MessageThread_mt_date_header_separation_minutes,
+            10
+        );
+
+        this.messageFontRes = typedArray.getResourceId(
+            R.styleable.MessageThread_mt_message_font_family, 0
+        );
+        this.dateFontRes = typedArray.getResourceId(
+            R.styleable.MessageThread_mt_date_font_family, 0
+        );
+        this.dateHeaderFontRes = typedArray.getResourceId(
+            R.styleable.MessageThread_mt_date_header_font_family, 0
+        );
+        this.fontsLoaded = this.messageFontRes == 0 && this.dateFontRes == 0 &&
+            this.dateHeaderFontRes == 0;
+
+        float messageFontSize = typedArray.getDimension(
+            R.styleable.MessageThread_mt_message_text_size,
+            Measure.spToPx(14, context)
+        );
+
+        float dateFontSize = typedArray.getDimension(
+            R.styleable.MessageThread_mt_date_text_size,
+            messageFontSize
+        );
+
+        float dateHeaderFontSize = typedArray.getDimension(
+            R.styleable.MessageThread_mt_date_header_text_size,
+            dateFontSize
+        );
+
+        this.messageFontSize = Measure.pxToSp(messageFontSize, context);
+        this.dateFontSize = Measure.pxToSp(dateFontSize, context);
+        this.dateHeaderFontSize = Measure.pxToSp(dateHeaderFontSize, context);
+
+        String dateFormat = typedArray.getString(
+            R.styleable.MessageThread_mt_date_format
+        );
+        if (dateFormat == null) {
+            dateFormat = "MMM d, yyyy 'at' h:mm aa";
+        }
+        this.dateFormat = dateFormat;
+
+        int dateFlags = MessageDateFormatter.FLAG_ALL;
+
+        if (!allow_minutes) {
+            dateFlags -= MessageDateFormatter.FLAG_MINUTES;
+        }
+
+        if (!allow_days) {
+            dateFlags -= MessageDateFormatter.FLAG_DAYS;
+        }
+        this.dateFlags = dateFlags;
+    }
+
+    /**
+     * Retrieve the preset for a MessageThread, resolving it if it is not cached
+     * for the theme of the Context.
+     *
+     * @param context      The Context.
+     * @param attrs        The attributes.
+     * @param defStyleAttr The default style attribute.
+     * @return The preset.
+     */
+    public static @NonNull StylePreset resolve(
+        @NonNull Context context,
+        @Nullable AttributeSet attrs,
+        int defStyleAttr
+    ) {
+        if (attrs != null && hasInlineAttributes(attrs)) {
+            return obtain(context, attrs, defStyleAttr);
+        }
+
+        Configuration configuration = context.getResources().getConfiguration();
+        Key key = new Key(
+            attrs == null ? 0 : attrs.getStyleAttribute(),
+            defStyleAttr,
+            context.getResources().getDisplayMetrics().densityDpi,
+            configuration.fontScale
+        );
+
+        Resources.Theme theme = context.getTheme();
+        synchronized (cache) {
+            Map<Key, StylePreset> presets = cache.get(theme);
+            if (presets == null) {
+                presets = new HashMap<>();
+                cache.put(theme, presets);
+            }
+
+            StylePreset preset = presets.get(key);
+            if (preset == null) {
+                preset = obtain(context, attrs, defStyleAttr);
+                presets.put(key, preset);
+            }
+            return preset;
+        }
+    }
+
+    /**
+     * Drop every cached preset, i.e. after the attributes of a theme have been changed
+     * with {@link Resources.Theme#applyStyle(int, boolean)}.
+     */
+    public static void clearCache() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Resolve a preset without caching it.
+     *
+     * @param context      The Context.
+     * @param attrs        The attributes.
+     * @param defStyleAttr The default style attribute.
+     * @return The preset.
+     */
+    private static StylePreset obtain(Context context, AttributeSet attrs, int defStyleAttr) {
+        TypedArray typedArray = context.obtainStyledAttributes(
+            attrs, R.styleable.MessageThread, defStyleAttr, 0
+        );
+        try {
+            return new StylePreset(context, typedArray);
+        } finally {
+            typedArray.recycle();
+        }
+    }
+
+    /**
+     * Check whether any MessageThread attributes are set directly on a View, rather
+     * than through its style or theme.
+     *
+     * @param attrs The attributes.
+     * @return True if any are set directly.
+     */
+    private static boolean hasInlineAttributes(AttributeSet attrs) {
+        for (int i = 0; i < attrs.getAttributeCount(); i++) {
+            int attr = attrs.getAttributeNameResource(i);
+            for (int styleable : R.styleable.MessageThread) {
+                if (styleable == attr) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Create Parameters from this preset, with a Date Formatter of their own. Fonts
+     * that have not loaded yet are left unset, so the default Typeface is used.
+     *
+     * @param context The Context.
+     * @return The Parameters.
+     */
+    @NonNull MessageParameters createParameters(@NonNull Context context) {
+        MessageDateFormatter formatter = DefaultMessageDateFormatter.FACTORY.create(
+            this.dateFormat, this.dateFlags
+        );
+
+        Typeface messageFont;
+        Typeface dateFont;
+        Typeface dateHeaderFont;
+        synchronized (this) {
+            messageFont = this.messageFont;
+            dateFont = this.dateFont;
+            dateHeaderFont = this.dateHeaderFont;
+        }
+
+        return new MessageParameters(
+            context, sentColor, sentTextColor, receivedColor, receivedTextColor, dateColor,
+            messageRadiusTopFrom, messageRadiusBottomFrom, messageRadiusTopTo,
+            messageRadiusBottomTo, textMessagePadding, imageMessagePadding,
+            previewMessagePadding, progressBarColor, elevation, avatarScale, avatarShape,
+            displayIncomingAvatars, displayOutgoingAvatars, dateHeaderEnabled,
+            dateHeaderColor, dateHeaderSeparation, messageFont, dateFont, dateHeaderFont,
+            messageFontSize, dateFontSize, dateHeaderFontSize, formatter
+        );
+    }
+
+    /**
+     * @return True if the fonts of this preset have loaded, or it has none.
+     */
+    public boolean areFontsLoaded() {
+        synchronized (this) {
+            return this.fontsLoaded;
+        }
+    }
+
+    /**
+     * @return The font for messages, or null if it is not set or has not loaded.
+     */
+    public @Nullable Typeface getMessageFont() {
+        synchronized (this) {
+            return this.messageFont;
+        }
+    }
+
+    /**
+     * @return The font for dates, or null if it is not set or has not loaded.
+     */
+    public @Nullable Typeface getDateFont() {
+        synchronized (this) {
+            return this.dateFont;
+        }
+    }
+
+    /**
+     * @return The font for date headers, or null if it is not set or has not loaded.
+     */
+    public @Nullable Typeface getDateHeaderFont() {
+        synchronized (this) {
+            return this.dateHeaderFont;
+        }
+    }
+
+    /**
+     * Load the fonts of this preset in the background, if they are not already loading.
+     * Must be called on the main thread. The listener is not notified if the fonts have
+     * already loaded.
+     *
+     * @param context  The Context.
+     * @param listener The listener to notify once the fonts have loaded.
+     */
+    void loadFonts(@NonNull Context context, @NonNull Listener listener) {
+        synchronized (this) {
+            if (this.fontsLoaded) {
+                return;
+            }
+
+            this.listeners.add(listener);
+            if (this.fontsHandle == null) {
+                this.fontsHandle = this.startLoadingFonts(context.getApplicationContext());
+            }
+        }
+    }
+
+    /**
+     * Start loading the fonts of this preset.
+     *
+     * @param context The application Context.
+     * @return The handle for the load.
+     */
+    private LoadHandle startLoadingFonts(final Context context) {
+        return Loader.submit(new Loader.Task() {
+            @Override
+            public void load(@NonNull LoadHandle handle) {
+                final Typeface messageFont = loadFont(context, messageFontRes);
+                final Typeface dateFont = loadFont(context, dateFontRes);
+                final Typeface dateHeaderFont = loadFont(context, dateHeaderFontRes);
+                Loader.deliver(handle, new Runnable() {
+                    @Override
+                    public void run() {
+                        finishLoadingFonts(messageFont, dateFont, dateHeaderFont);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Load a font resource.
+     *
+     * @param context The Context.
+     * @param font    The font resource, or 0.
+     * @return The font, or null if it is not set or could not be loaded.
+     */
+    private static Typeface loadFont(Context context, int font) {
+        if (font == 0) {
+            return null;
+        }
+
+        try {
+            return ResourcesCompat.getFont(context, font);
+        } catch (Resources.NotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Store the loaded fonts and notify every waiting listener.
+     *
+     * @param messageFont    The font for messages.
+     * @param dateFont       The font for dates.
+     * @param dateHeaderFont The font for date headers.
+     */
+    private void finishLoadingFonts(
+        Typeface messageFont, Typeface dateFont, Typeface dateHeaderFont
+    ) {
+        ArrayList<Listener> waiting;
+        synchronized (this) {
+            this.messageFont = messageFont;
+            this.dateFont = dateFont;
+            this.dateHeaderFont = dateHeaderFont;
+            this.fontsLoaded = true;
+            this.fontsHandle = null;
+            waiting = new ArrayList<>(this.listeners);
+            this.listeners.clear();
+        }
+
+        for (Listener listener : waiting) {
+            listener.onFontsLoaded(this);
+        }
+    }
+}
@@ -3,11 +3,83 @@ package tk.nathanf.chatthread.components.dates;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
+import java.util.TimeZone;
 
 /**
  * The Default MessageDateFormatter.
+ *
+ * The date patterns are only compiled once per thread, so a single formatter can be
+ * shared between the main thread and any background threads formatting dates.
  */
 public final class DefaultMessageDateFormatter extends MessageDateFormatter {
+    /**
+     * The compiled formats used by a single thread.
+     */
+    private static final class Formats {
+        private final SimpleDateFormat todayFormat =
+            new SimpleDateFormat("h:mm aa", Locale.US);
+        private final SimpleDateFormat weekFormat =
+            new SimpleDateFormat("EEEE 'at' h:mm aa", Locale.US);
+        private SimpleDateFormat dateFormat;
+        private String datePattern;
+        private TimeZone zone;
+
+        /**
+         * Set the time zone the formats display times in.
+         *
+         * @param zone The time zone.
+         */
+        private void setTimeZone(TimeZone zone) {
+            if (zone != this.zone) {
+                this.zone = zone;
+                this.todayFormat.setTimeZone(zone);
+                this.weekFormat.setTimeZone(zone);
+                if (this.dateFormat != null) {
+                    this.dateFormat.setTimeZone(zone);
+                }
+            }
+        }
+
+        /**
+         * Retrieve the format for the default pattern, compiling it again if the
+         * pattern has changed since it was last used.
+         *
+         * @param pattern The default pattern.
+         * @return The format.
+         */
+        private SimpleDateFormat getDateFormat(String pattern) {
+            if (this.dateFormat == null || !pattern.equals(this.datePattern)) {
+                this.dateFormat = new SimpleDateFormat(pattern, Locale.US);
+                if (this.zone != null) {
+                    this.dateFormat.setTimeZone(this.zone);
+                }
+                this.datePattern = pattern;
+            }
+            return this.dateFormat;
+        }
+    }
+
+    /**
+     * The Factory for the Default MessageDateFormatter.
+     */
+    public static final Factory FACTORY = new Factory() {
+        @Override
+        public MessageDateFormatter create(String defaultFormat, int flags) {
+            return new DefaultMessageDateFormatter(defaultFormat, flags);
+        }
+    };
+
+    /**
+     * The formats of each thread. SimpleDateFormat is not thread safe, so
+     * each thread formatting dates gets its own copy.
+     */
+    private final ThreadLocal<Formats> formats = new ThreadLocal<Formats>() {
+        @Override
+        protected Formats initialValue() {
+            return new Formats();
+        }
+    };
+
     /**
      * Create the Date Formatter.
      *
@@ -27,40 +99,52 @@ public final class DefaultMessageDateFormatter extends MessageDateFormatter {
      */
     @Override
     public String format(Date date) {
-        long minutesAgo = this.getMinutesAgo(date);
-        long daysAgo = this.getDaysAgo(date);
+        return this.format(date, this.now());
+    }
+
+    /**
+     * Format the Date relative to a specific time.
+     *
+     * @param date  The Date.
+     * @param now   The current time, in milliseconds since the epoch.
+     *
+     * @return The formatted Date.
+     */
+    @Override
+    public String format(Date date, long now) {
+        long minutesAgo = this.getMinutesAgo(date, now);
+        int daysAgo = this.getCalendarDaysAgo(date, now);
         int flags = this.getFlags();
 
-        SimpleDateFormat todayFormat = new SimpleDateFormat("h:mm aa", Locale.US);
-        SimpleDateFormat weekFormat = new SimpleDateFormat("EEEE 'at' h:mm aa", Locale.US);
-        SimpleDateFormat dateFormat = new SimpleDateFormat(
-                this.getDefaultFormat(), Locale.US
-        );
+        Formats formats = this.formats.get();
+        formats.setTimeZone(this.getTimeZone(now));
+        SimpleDateFormat todayFormat = formats.todayFormat;
+        SimpleDateFormat weekFormat = formats.weekFormat;
+        SimpleDateFormat dateFormat = formats.getDateFormat(this.getDefaultFormat());
 
-        if ((flags & FLAG_MINUTES) == FLAG_MINUTES && this.isToday(date)) {
-            if (minutesAgo < 60) {
-                if (minutesAgo < 1) {
-                    return "Just now";
-                }
+        if ((flags & FLAG_MINUTES) == FLAG_MINUTES && minutesAgo < 60) {
+            if (minutesAgo < 1) {
+                return "Just now";
+            }
 
-                if (minutesAgo < 2) {
-                    return "A minute ago";
-                }
+            if (minutesAgo < 2) {
+                return "A minute ago";
+            }
 
-                return minutesAgo + " minutes ago";
-            } else if ((flags & FLAG_DAYS) == FLAG_DAYS) {
+            return minutesAgo + " minutes ago";
+        }
+
+        if ((flags & FLAG_DAYS) == FLAG_DAYS) {
+            if (daysAgo == 0) {
                 return "Today at " + todayFormat.format(date);
-            } else {
-                return dateFormat.format(date);
-            }
-        } else {
-            if ((flags & FLAG_DAYS) == FLAG_DAYS && daysAgo < 2) {
-                return ("Yesterday at " + todayFormat.format(date));
-            } else if ((flags & FLAG_DAYS) == FLAG_DAYS && daysAgo < 8) {
+            } else if (daysAgo == 1) {
+                return "Yesterday at " + todayFormat.format(date);
+            } else if (daysAgo > 1 && daysAgo < CALENDAR_DAYS) {
+                // Within the last week, the day of the week is unambiguous.
                 return weekFormat.format(date);
-            } else {
-                return dateFormat.format(date);
             }
         }
+
+        return dateFormat.format(date);
     }
 }
@@ -1,13 +1,81 @@
 package tk.nathanf.chatthread.components.dates;
 
+import java.util.Calendar;
 import java.util.Date;
+import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
+import tk.nathanf.chatthread.components.MessageThread;
+
 /**
  * A representation of a Date Formatter.
  */
 @SuppressWarnings({"unused", "WeakerAccess"})
 public abstract class MessageDateFormatter {
+    /**
+     * The source of the current time for a Date Formatter.
+     */
+    public interface Clock {
+        /**
+         * Retrieve the current time.
+         *
+         * @return The current time, in milliseconds since the epoch.
+         */
+        long currentTimeMillis();
+    }
+
+    /**
+     * Creates Date Formatters, see {@link MessageThread#setDateFormatter(Factory)}.
+     */
+    public interface Factory {
+        /**
+         * Create a Date Formatter.
+         *
+         * @param defaultFormat The Default Format.
+         * @param flags         The Flags.
+         * @return The Date Formatter.
+         */
+        MessageDateFormatter create(String defaultFormat, int flags);
+    }
+
+    /**
+     * The local midnights of the current day and of the days before it.
+     */
+    private static final class DayBoundaries {
+        private final TimeZone zone;
+        private final long[] midnights;
+        private final long nextMidnight;
+        private final long zoneCheckedAt;
+
+        DayBoundaries(TimeZone zone, long[] midnights, long nextMidnight, long zoneCheckedAt) {
+            this.zone = zone;
+            this.midnights = midnights;
+            this.nextMidnight = nextMidnight;
+            this.zoneCheckedAt = zoneCheckedAt;
+        }
+    }
+
+    /**
+     * The number of days before today whose boundaries are computed by
+     * {@link MessageDateFormatter#getCalendarDaysAgo(Date, long)}.
+     */
+    public static final int CALENDAR_DAYS = 7;
+
+    /**
+     * How often the default time zone is checked for changes, in milliseconds.
+     */
+    private static final long ZONE_CHECK_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * The Clock that reads the system time.
+     */
+    public static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
     /**
      * Flag for displaying Minutes ago.
      * <br>
@@ -44,6 +112,21 @@ public abstract class MessageDateFormatter {
      */
     private int flags;
 
+    /**
+     * The Clock.
+     */
+    private Clock clock = SYSTEM_CLOCK;
+
+    /**
+     * The day boundaries for the current day, or null if they have not been computed.
+     */
+    private volatile DayBoundaries boundaries;
+
+    /**
+     * The number of times the format, flags or Clock of this Formatter have changed.
+     */
+    private volatile int modificationCount = 0;
+
     /**
      * Create the Date Formatter.
      *
@@ -55,6 +138,15 @@ public abstract class MessageDateFormatter {
         this.flags = flags;
     }
 
+    /**
+     * Retrieve the current time from the Clock of this Formatter.
+     *
+     * @return The current time, in milliseconds since the epoch.
+     */
+    public long now() {
+        return this.clock.currentTimeMillis();
+    }
+
     /**
      * Check if a Date is today.
      *
@@ -62,7 +154,117 @@ public abstract class MessageDateFormatter {
      * @return True if it was today, otherwise false.
      */
     public boolean isToday(Date date) {
-        return this.getDaysAgo(date) < 1;
+        return this.isToday(date, this.now());
+    }
+
+    /**
+     * Check if a Date is today in the default time zone, relative to a specific time.
+     *
+     * @param date The Date.
+     * @param now  The current time, in milliseconds since the epoch.
+     * @return True if it was today, otherwise false.
+     */
+    public boolean isToday(Date date, long now) {
+        return this.getCalendarDaysAgo(date.getTime(), now) == 0;
+    }
+
+    /**
+     * Retrieve the number of calendar days in the default time zone between a Date and
+     * a specific time, i.e. 0 for today and 1 for yesterday, no matter how many hours ago
+     * the Date was. Dates after the current time are counted as today.
+     *
+     * The local midnights are only computed again once the day or the time zone changes,
+     * so this is a couple of comparisons.
+     *
+     * @param date The Date.
+     * @param now  The current time, in milliseconds since the epoch.
+     * @return The number of days, or -1 if it was more than
+     *         {@link MessageDateFormatter#CALENDAR_DAYS} days ago.
+     */
+    public int getCalendarDaysAgo(Date date, long now) {
+        return this.getCalendarDaysAgo(date.getTime(), now);
+    }
+
+    /**
+     * Retrieve the number of calendar days in the default time zone between a time and
+     * a specific time.
+     *
+     * @param time The time, in milliseconds since the epoch.
+     * @param now  The current time, in milliseconds since the epoch.
+     * @return The number of days, or -1 if it was more than
+     *         {@link MessageDateFormatter#CALENDAR_DAYS} days ago.
+     * @see MessageDateFormatter#getCalendarDaysAgo(Date, long)
+     */
+    public int getCalendarDaysAgo(long time, long now) {
+        long[] midnights = this.getBoundaries(now).midnights;
+        for (int day = 0; day < midnights.length; day++) {
+            if (time >= midnights[day]) {
+                return day;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Retrieve the time zone that calendar days are computed in, as of a specific time.
+     *
+     * @param now The current time, in milliseconds since the epoch.
+     * @return The time zone.
+     */
+    public TimeZone getTimeZone(long now) {
+        return this.getBoundaries(now).zone;
+    }
+
+    /**
+     * Retrieve the day boundaries for a specific time, computing them again if the day
+     * has changed or the default time zone has changed since they were computed.
+     *
+     * @param now The current time, in milliseconds since the epoch.
+     * @return The boundaries.
+     */
+    private DayBoundaries getBoundaries(long now) {
+        DayBoundaries boundaries = this.boundaries;
+        if (
+            boundaries != null &&
+            now >= boundaries.midnights[0] && now < boundaries.nextMidnight &&
+            Math.abs(now - boundaries.zoneCheckedAt) < ZONE_CHECK_INTERVAL
+        ) {
+            return boundaries;
+        }
+
+        // Reading the default time zone copies it, so it is only checked periodically.
+        TimeZone zone = TimeZone.getDefault();
+        if (
+            boundaries != null &&
+            now >= boundaries.midnights[0] && now < boundaries.nextMidnight &&
+            zone.hasSameRules(boundaries.zone) && zone.getID().equals(boundaries.zone.getID())
+        ) {
+            boundaries = new DayBoundaries(
+                boundaries.zone, boundaries.midnights, boundaries.nextMidnight, now
+            );
+        } else {
+            Calendar calendar = Calendar.getInstance(zone);
+            calendar.setTimeInMillis(now);
+            calendar.set(Calendar.HOUR_OF_DAY, 0);
+            calendar.set(Calendar.MINUTE, 0);
+            calendar.set(Calendar.SECOND, 0);
+            calendar.set(Calendar.MILLISECOND, 0);
+
+            long[] midnights = new long[CALENDAR_DAYS + 1];
+            midnights[0] = calendar.getTimeInMillis();
+            calendar.add(Calendar.DAY_OF_MONTH, 1);
+            long nextMidnight = calendar.getTimeInMillis();
+            calendar.setTimeInMillis(midnights[0]);
+            for (int day = 1; day < midnights.length; day++) {
+                calendar.add(Calendar.DAY_OF_MONTH, -1);
+                midnights[day] = calendar.getTimeInMillis();
+            }
+
+            boundaries = new DayBoundaries(zone, midnights, nextMidnight, now);
+        }
+
+        this.boundaries = boundaries;
+        return boundaries;
     }
 
     /**
@@ -72,7 +274,29 @@ public abstract class MessageDateFormatter {
      * @return The number of minutes ago it was.
      */
     public long getMinutesAgo(Date date) {
-        return TimeUnit.MILLISECONDS.toMinutes(new Date().getTime() - date.getTime());
+        return this.getMinutesAgo(date, this.now());
+    }
+
+    /**
+     * Retrieve the number of minutes ago a specific date was, relative to a specific time.
+     *
+     * @param date The Date.
+     * @param now  The current time, in milliseconds since the epoch.
+     * @return The number of minutes ago it was.
+     */
+    public long getMinutesAgo(Date date, long now) {
+        return this.getMinutesAgo(date.getTime(), now);
+    }
+
+    /**
+     * Retrieve the number of minutes ago a specific time was, relative to the current time.
+     *
+     * @param time The time, in milliseconds since the epoch.
+     * @param now  The current time, in milliseconds since the epoch.
+     * @return The number of minutes ago it was.
+     */
+    public long getMinutesAgo(long time, long now) {
+        return TimeUnit.MILLISECONDS.toMinutes(now - time);
     }
 
     /**
@@ -83,7 +307,18 @@ public abstract class MessageDateFormatter {
      * @return       The number of minutes between the two Dates.
      */
     public long getMinutesBetween(Date first, Date second) {
-        return Math.abs(TimeUnit.MILLISECONDS.toMinutes(first.getTime() - second.getTime()));
+        return this.getMinutesBetween(first.getTime(), second.getTime());
+    }
+
+    /**
+     * Retrieve the number of minutes between two times.
+     *
+     * @param first  The first time, in milliseconds since the epoch.
+     * @param second The second time, in milliseconds since the epoch.
+     * @return       The number of minutes between the two times.
+     */
+    public long getMinutesBetween(long first, long second) {
+        return Math.abs(TimeUnit.MILLISECONDS.toMinutes(first - second));
     }
 
     /**
@@ -93,7 +328,18 @@ public abstract class MessageDateFormatter {
      * @return     The number of days ago it was.
      */
     public long getDaysAgo(Date date) {
-        return TimeUnit.MILLISECONDS.toDays(new Date().getTime() - date.getTime());
+        return this.getDaysAgo(date, this.now());
+    }
+
+    /**
+     * The number of Days ago a specific Date was, relative to a specific time.
+     *
+     * @param date The Date.
+     * @param now  The current time, in milliseconds since the epoch.
+     * @return     The number of days ago it was.
+     */
+    public long getDaysAgo(Date date, long now) {
+        return TimeUnit.MILLISECONDS.toDays(now - date.getTime());
     }
 
     /**
@@ -125,6 +371,28 @@ public abstract class MessageDateFormatter {
      */
     public void setFlags(int flags) {
         this.flags = flags;
+        this.notifyChanged();
+    }
+
+    /**
+     * Retrieve the Clock this Formatter reads the current time from.
+     *
+     * @return The Clock.
+     */
+    public Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * Set the Clock this Formatter reads the current time from. Defaults to
+     * {@link MessageDateFormatter#SYSTEM_CLOCK}, set a fixed Clock to make the
+     * formatted dates deterministic in tests.
+     *
+     * @param clock The Clock.
+     */
+    public void setClock(Clock clock) {
+        this.clock = clock;
+        this.notifyChanged();
     }
 
     /**
@@ -134,6 +402,25 @@ public abstract class MessageDateFormatter {
      */
     public void setDefaultFormat(String format) {
         this.defaultFormat = format;
+        this.notifyChanged();
+    }
+
+    /**
+     * Retrieve the number of times this Formatter has changed in a way that affects its
+     * output. Dates formatted while the count was different must be formatted again.
+     *
+     * @return The modification count.
+     */
+    public int getModificationCount() {
+        return this.modificationCount;
+    }
+
+    /**
+     * Record that this Formatter has changed in a way that affects its output. Subclasses
+     * with settings of their own should call this whenever one of them changes.
+     */
+    protected void notifyChanged() {
+        this.modificationCount++;
     }
 
     /**
@@ -143,4 +430,19 @@ public abstract class MessageDateFormatter {
      * @return      The formatted Date.
      */
     public abstract String format(Date date);
+
+    /**
+     * Format a Date relative to a specific time. The MessageThread formats every date
+     * displayed in a single frame relative to the same time.
+     *
+     * Formatters that display relative dates should override this. By default the
+     * time is ignored and {@link MessageDateFormatter#format(Date)} is used.
+     *
+     * @param date  The Date.
+     * @param now   The current time, in milliseconds since the epoch.
+     * @return      The formatted Date.
+     */
+    public String format(Date date, long now) {
+        return this.format(date);
+    }
 }
@@ -0,0 +1,238 @@
+package tk.nathanf.chatthread.components.loading;
+
+import androidx.annotation.NonNull;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * Limits the number of network fetches made at once for Preview messages.
+ *
+ * Every fetch must hold a {@link Permit} while its connection is open. At most
+ * {@link FetchScheduler#getMaxInFlight()} fetches are in flight at once, and at most
+ * {@link FetchScheduler#getMaxPerHost()} of those to the same host. When permits
+ * are released, waiting fetches for visible loads are started first, newest first.
+ *
+ * A fetch must never acquire a second permit while holding one.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class FetchScheduler {
+    /**
+     * A permit to make a single fetch.
+     */
+    public static final class Permit {
+        private final String host;
+        private boolean released = false;
+
+        private Permit(String host) {
+            this.host = host;
+        }
+
+        /**
+         * Release the permit, allowing another fetch to start. Releasing a
+         * permit more than once has no effect.
+         */
+        public void release() {
+            synchronized (lock) {
+                if (this.released) {
+                    return;
+                }
+                this.released = true;
+
+                int count = perHost.get(this.host) - 1;
+                if (count == 0) {
+                    perHost.remove(this.host);
+                } else {
+                    perHost.put(this.host, count);
+                }
+                inFlight--;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * A fetch waiting for a permit.
+     */
+    private static final class Waiter {
+        private final String host;
+        private final LoadHandle handle;
+        private final long sequence;
+
+        private Waiter(String host, LoadHandle handle, long sequence) {
+            this.host = host;
+            this.handle = handle;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * The default maximum number of fetches in flight to a single host.
+     */
+    public static final int DEFAULT_MAX_PER_HOST = 2;
+
+    /**
+     * The default maximum number of fetches in flight.
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 6;
+
+    private static final Object lock = new Object();
+
+    /**
+     * The number of fetches in flight per host.
+     */
+    private static final HashMap<String, Integer> perHost = new HashMap<>();
+
+    /**
+     * The fetches waiting for a permit.
+     */
+    private static final ArrayList<Waiter> waiters = new ArrayList<>();
+
+    private static int maxPerHost = DEFAULT_MAX_PER_HOST;
+    private static int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+    private static int inFlight = 0;
+    private static long sequence = 0;
+
+    private FetchScheduler() {}
+
+    /**
+     * Set the maximum number of fetches in flight to a single host.
+     * Defaults to {@link FetchScheduler#DEFAULT_MAX_PER_HOST}.
+     *
+     * @param max The maximum, at least 1.
+     */
+    public static void setMaxPerHost(int max) {
+        synchronized (lock) {
+            maxPerHost = Math.max(1, max);
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * @return The maximum number of fetches in flight to a single host.
+     */
+    public static int getMaxPerHost() {
+        synchronized (lock) {
+            return maxPerHost;
+        }
+    }
+
+    /**
+     * Set the maximum number of fetches in flight.
+     * Defaults to {@link FetchScheduler#DEFAULT_MAX_IN_FLIGHT}.
+     *
+     * @param max The maximum, at least 1.
+     */
+    public static void setMaxInFlight(int max) {
+        synchronized (lock) {
+            maxInFlight = Math.max(1, max);
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * @return The maximum number of fetches in flight.
+     */
+    public static int getMaxInFlight() {
+        synchronized (lock) {
+            return maxInFlight;
+        }
+    }
+
+    /**
+     * Wait for a permit to fetch a URL. The wait ends with an InterruptedException
+     * when the load is cancelled, since cancelling a load interrupts its thread.
+     *
+     * @param url    The URL to fetch.
+     * @param handle The handle of the load the fetch belongs to.
+     * @return The permit. It must be released once the connection is closed.
+     * @throws InterruptedException If the load was cancelled while waiting.
+     */
+    public static @NonNull Permit acquire(
+        @NonNull String url, @NonNull LoadHandle handle
+    ) throws InterruptedException {
+        String host = getHost(url);
+        synchronized (lock) {
+            Waiter waiter = new Waiter(host, handle, sequence++);
+            waiters.add(waiter);
+            try {
+                while (next() != waiter) {
+                    if (handle.isCancelled()) {
+                        throw new InterruptedException();
+                    }
+                    lock.wait();
+                }
+            } finally {
+                waiters.remove(waiter);
+                // Another waiter may be eligible now that this one has left the queue.
+                lock.notifyAll();
+            }
+
+            Integer count = perHost.get(host);
+            perHost.put(host, count == null ? 1 : count + 1);
+            inFlight++;
+            return new Permit(host);
+        }
+    }
+
+    /**
+     * Re-evaluate the waiting fetches after the visibility of a load changed.
+     */
+    static void onPriorityChanged() {
+        synchronized (lock) {
+            if (!waiters.isEmpty()) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Find the waiter that should be given the next permit: the newest waiter for
+     * a visible load whose host is below its limit, or the newest waiter for a load
+     * that is not visible if there is none. Must be called while holding the lock.
+     *
+     * @return The waiter, or null if no waiter can start.
+     */
+    private static Waiter next() {
+        if (inFlight >= maxInFlight) {
+            return null;
+        }
+
+        Waiter best = null;
+        for (Waiter waiter : waiters) {
+            Integer count = perHost.get(waiter.host);
+            if (count != null && count >= maxPerHost) {
+                continue;
+            }
+
+            if (
+                best == null ||
+                (waiter.handle.isVisible() && !best.handle.isVisible()) ||
+                (
+                    waiter.handle.isVisible() == best.handle.isVisible() &&
+                    waiter.sequence > best.sequence
+                )
+            ) {
+                best = waiter;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Retrieve the host of a URL.
+     *
+     * @param url The URL.
+     * @return The host in lower case, or the URL itself if it could not be parsed.
+     */
+    private static String getHost(String url) {
+        try {
+            return new URL(url).getHost().toLowerCase(Locale.US);
+        } catch (MalformedURLException e) {
+            return url;
+        }
+    }
+}
@@ -0,0 +1,495 @@
+package tk.nathanf.chatthread.components.loading;
+
+import androidx.annotation.NonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Makes the requests used to fetch remote content, through the configured
+ * {@link HttpTransport}.
+ *
+ * Every request is made with the configured connect and read timeouts, and
+ * every response body is limited to the maximum size for its {@link Resource}.
+ * A response that declares a larger Content-Length is aborted before any of it
+ * is read, and one that turns out to be larger is aborted as soon as the limit
+ * is passed. A response that is still being read once the deadline has passed
+ * is aborted as well, so a server that keeps sending a byte at a time within
+ * the read timeout cannot hold a loader thread indefinitely. Each abort is
+ * recorded in the {@link LoadMetrics}.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class Http {
+    /**
+     * The kinds of resource that are fetched, each with its own maximum size.
+     */
+    public enum Resource {
+        /**
+         * A page scraped for a Preview message.
+         */
+        Html(2 * 1024 * 1024),
+
+        /**
+         * An image displayed in an Image or Preview message.
+         */
+        Image(8 * 1024 * 1024),
+
+        /**
+         * The avatar of an Author.
+         */
+        Avatar(1024 * 1024);
+
+        /**
+         * The default maximum size, in bytes.
+         */
+        private final long defaultMaxBytes;
+
+        Resource(long defaultMaxBytes) {
+            this.defaultMaxBytes = defaultMaxBytes;
+        }
+
+        /**
+         * @return The default maximum size of this resource, in bytes.
+         */
+        public long getDefaultMaxBytes() {
+            return this.defaultMaxBytes;
+        }
+    }
+
+    /**
+     * Thrown when a response is larger than the maximum size for its resource.
+     */
+    public static final class ResponseTooLargeException extends IOException {
+        ResponseTooLargeException(String url, long maxBytes) {
+            super("Response from " + url + " is larger than " + maxBytes + " bytes");
+        }
+    }
+
+    /**
+     * Thrown when a response is still being read once the deadline has passed.
+     */
+    public static final class DeadlineExceededException extends IOException {
+        DeadlineExceededException(String url, long deadline) {
+            super("Response from " + url + " took longer than " + deadline + "ms to read");
+        }
+    }
+
+    /**
+     * The default connect timeout, in milliseconds.
+     */
+    public static final int DEFAULT_CONNECT_TIMEOUT = 10 * 1000;
+
+    /**
+     * The default read timeout, in milliseconds.
+     */
+    public static final int DEFAULT_READ_TIMEOUT = 15 * 1000;
+
+    /**
+     * The default deadline for a whole request, in milliseconds.
+     */
+    public static final long DEFAULT_DEADLINE = 60 * 1000;
+
+    private static volatile int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    private static volatile int readTimeout = DEFAULT_READ_TIMEOUT;
+    private static volatile long deadline = DEFAULT_DEADLINE;
+    private static volatile HttpTransport transport = new UrlConnectionTransport();
+
+    /**
+     * The maximum size of each resource, indexed by ordinal.
+     */
+    private static final long[] maxBytes = new long[Resource.values().length];
+
+    static {
+        for (Resource resource : Resource.values()) {
+            maxBytes[resource.ordinal()] = resource.getDefaultMaxBytes();
+        }
+    }
+
+    private Http() {}
+
+    /**
+     * Set the connect and read timeouts.
+     * Defaults to {@link Http#DEFAULT_CONNECT_TIMEOUT} and {@link Http#DEFAULT_READ_TIMEOUT}.
+     *
+     * @param connect The time to wait for a connection to be established.
+     * @param read    The time to wait for data once connected.
+     * @param unit    The unit of the timeouts.
+     */
+    public static void setTimeouts(long connect, long read, @NonNull TimeUnit unit) {
+        connectTimeout = (int) Math.min(Integer.MAX_VALUE, unit.toMillis(connect));
+        readTimeout = (int) Math.min(Integer.MAX_VALUE, unit.toMillis(read));
+    }
+
+    /**
+     * @return The connect timeout, in milliseconds.
+     */
+    public static int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * @return The read timeout, in milliseconds.
+     */
+    public static int getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * Set the deadline for a request. A request whose body is still being read once the
+     * deadline has passed is aborted with a {@link DeadlineExceededException}.
+     * Defaults to {@link Http#DEFAULT_DEADLINE}.
+     *
+     * @param deadline The time a request may take, from when it is made until its
+     *                 body has been read.
+     * @param unit     The unit of the deadline.
+     */
+    public static void setDeadline(long deadline, @NonNull TimeUnit unit) {
+        Http.deadline = unit.toMillis(deadline);
+    }
+
+    /**
+     * @return The deadline for a request, in milliseconds.
+     */
+    public static long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Set the maximum size of a resource.
+     * Defaults to {@link Resource#getDefaultMaxBytes()}.
+     *
+     * @param resource The kind of resource.
+     * @param bytes    The maximum size, in bytes.
+     */
+    public static void setMaxBytes(@NonNull Resource resource, long bytes) {
+        synchronized (maxBytes) {
+            maxBytes[resource.ordinal()] = bytes;
+        }
+    }
+
+    /**
+     * Retrieve the maximum size of a resource.
+     *
+     * @param resource The kind of resource.
+     * @return The maximum size, in bytes.
+     */
+    public static long getMaxBytes(@NonNull Resource resource) {
+        synchronized (maxBytes) {
+            return maxBytes[resource.ordinal()];
+        }
+    }
+
+    /**
+     * Set the transport used to make requests.
+     * Defaults to a {@link UrlConnectionTransport}.
+     *
+     * @param transport The transport.
+     */
+    public static void setTransport(@NonNull HttpTransport transport) {
+        Http.transport = transport;
+    }
+
+    /**
+     * @return The transport used to make requests.
+     */
+    public static @NonNull HttpTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Make a GET request with the configured timeouts and wait for the response
+     * headers, recording a timeout in the {@link LoadMetrics}.
+     *
+     * @param url      The URL.
+     * @param headers  The headers to send.
+     * @param resource The kind of resource being fetched.
+     * @return The response. It must be closed once its body is no longer needed.
+     * @throws IOException If the request failed.
+     */
+    public static @NonNull HttpTransport.Response execute(
+        @NonNull String url, @NonNull Map<String, String> headers, @NonNull Resource resource
+    ) throws IOException {
+        try {
+            return transport.execute(
+                new HttpTransport.Request(url, headers, connectTimeout, readTimeout)
+            );
+        } catch (HttpTransport.ConnectTimeoutException e) {
+            LoadMetrics.recordAbort(url, resource, LoadMetrics.AbortReason.ConnectTimeout);
+            throw e;
+        } catch (SocketTimeoutException e) {
+            LoadMetrics.recordAbort(url, resource, LoadMetrics.AbortReason.ReadTimeout);
+            throw e;
+        }
+    }
+
+    /**
+     * Make a GET request with the configured timeouts.
+     *
+     * @param url      The URL.
+     * @param resource The kind of resource being fetched.
+     * @return The response. It must be closed once its body is no longer needed.
+     * @throws IOException If the request failed.
+     */
+    public static @NonNull HttpTransport.Response execute(
+        @NonNull String url, @NonNull Resource resource
+    ) throws IOException {
+        return execute(url, Collections.<String, String>emptyMap(), resource);
+    }
+
+    /**
+     * Retrieve the body of a response, limited to the maximum size of its resource.
+     * Reading from the stream throws a {@link ResponseTooLargeException} once the
+     * limit is passed, and a {@link DeadlineExceededException} once the deadline,
+     * counted from this call, has passed. Read timeouts are recorded in the
+     * {@link LoadMetrics}.
+     *
+     * @param response The response.
+     * @param resource The kind of resource being fetched.
+     * @return The body.
+     * @throws IOException If the request was not successful, or the response
+     *                     declares a size larger than the maximum.
+     */
+    public static @NonNull InputStream getBody(
+        @NonNull HttpTransport.Response response, @NonNull Resource resource
+    ) throws IOException {
+        return getBody(response, resource, System.nanoTime());
+    }
+
+    /**
+     * Retrieve the body of a response, limited to the maximum size of its resource
+     * and to the deadline counted from when the request was made.
+     *
+     * @param response  The response.
+     * @param resource  The kind of resource being fetched.
+     * @param startedAt When the request was made, from {@link System#nanoTime()}.
+     * @return The body.
+     * @throws IOException If the request was not successful, or the response
+     *                     declares a size larger than the maximum.
+     */
+    static @NonNull InputStream getBody(
+        @NonNull HttpTransport.Response response, @NonNull Resource resource, long startedAt
+    ) throws IOException {
+        String url = response.getUrl();
+        int code = response.getCode();
+        if (code < 200 || code >= 300) {
+            throw new IOException("Request to " + url + " failed with status " + code);
+        }
+
+        return limit(response, response.getBody(), resource, startedAt);
+    }
+
+    /**
+     * Limit a stream over the body of a response to the maximum size of another kind
+     * of resource, i.e. once the first bytes of a body opened as one kind of resource
+     * have shown that it is another. The deadline is counted from this call.
+     *
+     * @param response The response the body belongs to.
+     * @param input    The body, positioned at its start.
+     * @param resource The kind of resource the body turned out to be.
+     * @return The limited body.
+     * @throws IOException If the response declares a size larger than the maximum.
+     */
+    public static @NonNull InputStream limit(
+        @NonNull HttpTransport.Response response,
+        @NonNull InputStream input,
+        @NonNull Resource resource
+    ) throws IOException {
+        return limit(response, input, resource, System.nanoTime());
+    }
+
+    /**
+     * Limit a stream over the body of a response to the maximum size of a resource
+     * and to the deadline counted from when the request was made.
+     *
+     * @param response  The response the body belongs to.
+     * @param input     The body, positioned at its start.
+     * @param resource  The kind of resource being fetched.
+     * @param startedAt When the request was made, from {@link System#nanoTime()}.
+     * @return The limited body.
+     * @throws IOException If the response declares a size larger than the maximum.
+     */
+    private static InputStream limit(
+        HttpTransport.Response response, InputStream input, Resource resource, long startedAt
+    ) throws IOException {
+        String url = response.getUrl();
+        long max = getMaxBytes(resource);
+        long length = getContentLength(response);
+        if (length > max) {
+            LoadMetrics.recordAbort(url, resource, LoadMetrics.AbortReason.TooLarge);
+            throw new ResponseTooLargeException(url, max);
+        }
+
+        return new CappedInputStream(input, url, resource, max, startedAt, getDeadline());
+    }
+
+    /**
+     * Fetch the body of a URL into a byte array.
+     *
+     * @param url      The URL.
+     * @param resource The kind of resource being fetched.
+     * @return The body.
+     * @throws IOException If the body could not be read or was too large.
+     */
+    public static @NonNull byte[] readFully(
+        @NonNull String url, @NonNull Resource resource
+    ) throws IOException {
+        long startedAt = System.nanoTime();
+        HttpTransport.Response response = execute(url, resource);
+        try {
+            return readFully(response, getBody(response, resource, startedAt));
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Read the rest of a response body into a byte array. The stream is not closed.
+     *
+     * @param response The response the body belongs to.
+     * @param input    The body, as returned by
+     *                 {@link Http#getBody(HttpTransport.Response, Resource)}.
+     * @return The body.
+     * @throws IOException If the body could not be read or was too large.
+     */
+    public static @NonNull byte[] readFully(
+        @NonNull HttpTransport.Response response, @NonNull InputStream input
+    ) throws IOException {
+        long length = getContentLength(response);
+        ByteArrayOutputStream output = new ByteArrayOutputStream(
+            length > 0 && length < Integer.MAX_VALUE ? (int) length : 16 * 1024
+        );
+        byte[] buffer = new byte[8 * 1024];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Retrieve the Content-Length of a response.
+     *
+     * @param response The response.
+     * @return The length, or -1 if it is not known.
+     */
+    private static long getContentLength(HttpTransport.Response response) {
+        String header = response.getHeader("Content-Length");
+        if (header == null) {
+            return -1;
+        }
+
+        try {
+            return Long.parseLong(header.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * A response body that is aborted once it passes a maximum size or a deadline.
+     */
+    private static final class CappedInputStream extends FilterInputStream {
+        private final String url;
+        private final Resource resource;
+        private final long max;
+        private final long startedAt;
+        private final long deadline;
+        private long count = 0;
+
+        CappedInputStream(
+            InputStream input,
+            String url,
+            Resource resource,
+            long max,
+            long startedAt,
+            long deadline
+        ) {
+            super(input);
+            this.url = url;
+            this.resource = resource;
+            this.max = max;
+            this.startedAt = startedAt;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkDeadline();
+            int read;
+            try {
+                read = super.read();
+            } catch (SocketTimeoutException e) {
+                LoadMetrics.recordAbort(url, resource, LoadMetrics.AbortReason.ReadTimeout);
+                throw e;
+            }
+
+            if (read != -1) {
+                count(1);
+            }
+            return read;
+        }
+
+        @Override
+        public int read(@NonNull byte[] buffer, int offset, int length) throws IOException {
+            checkDeadline();
+            int read;
+            try {
+                read = super.read(buffer, offset, length);
+            } catch (SocketTimeoutException e) {
+                LoadMetrics.recordAbort(url, resource, LoadMetrics.AbortReason.ReadTimeout);
+                throw e;
+            }
+
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            checkDeadline();
+            long skipped = super.skip(count);
+            count(skipped);
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        /**
+         * Abort the read if the deadline has passed.
+         *
+         * @throws DeadlineExceededException If the deadline has passed.
+         */
+        private void checkDeadline() throws DeadlineExceededException {
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.startedAt);
+            if (elapsed > this.deadline) {
+                LoadMetrics.recordAbort(url, resource, LoadMetrics.AbortReason.Deadline);
+                throw new DeadlineExceededException(url, deadline);
+            }
+        }
+
+        /**
+         * Count bytes read from the stream, aborting once there are too many.
+         *
+         * @param read The number of bytes read.
+         * @throws ResponseTooLargeException If the maximum size was passed.
+         */
+        private void count(long read) throws ResponseTooLargeException {
+            this.count += read;
+            if (this.count > this.max) {
+                LoadMetrics.recordAbort(url, resource, LoadMetrics.AbortReason.TooLarge);
+                throw new ResponseTooLargeException(url, max);
+            }
+        }
+    }
+}
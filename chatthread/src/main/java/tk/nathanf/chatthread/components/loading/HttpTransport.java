@@ -0,0 +1,146 @@
+package tk.nathanf.chatthread.components.loading;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The client used to make every request for remote content: avatars, images and
+ * the pages and images of Preview messages.
+ *
+ * The default is the {@link UrlConnectionTransport}. Set your own with
+ * {@link Http#setTransport(HttpTransport)} to share your app's HTTP client, its
+ * connection pool and its headers, or to serve content from a local server in tests.
+ *
+ * Timeouts and size limits are applied by {@link Http}, implementations only need
+ * to honour the timeouts passed in the {@link Request}.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public interface HttpTransport {
+    /**
+     * Perform a GET request and wait for the response headers.
+     *
+     * @param request The request.
+     * @return The response. It must be closed once its body is no longer needed.
+     * @throws ConnectTimeoutException If the connection could not be established in time.
+     * @throws IOException             If the request failed.
+     */
+    @NonNull Response execute(@NonNull Request request) throws IOException;
+
+    /**
+     * A GET request.
+     */
+    final class Request {
+        private final String url;
+        private final Map<String, String> headers;
+        private final int connectTimeout;
+        private final int readTimeout;
+
+        /**
+         * Create the request.
+         *
+         * @param url            The URL.
+         * @param headers        The headers to send, in addition to the transport's own.
+         * @param connectTimeout The connect timeout, in milliseconds.
+         * @param readTimeout    The read timeout, in milliseconds.
+         */
+        public Request(
+            @NonNull String url,
+            @NonNull Map<String, String> headers,
+            int connectTimeout,
+            int readTimeout
+        ) {
+            this.url = url;
+            this.headers = Collections.unmodifiableMap(new LinkedHashMap<>(headers));
+            this.connectTimeout = connectTimeout;
+            this.readTimeout = readTimeout;
+        }
+
+        /**
+         * @return The URL.
+         */
+        public @NonNull String getUrl() {
+            return url;
+        }
+
+        /**
+         * @return The headers to send.
+         */
+        public @NonNull Map<String, String> getHeaders() {
+            return headers;
+        }
+
+        /**
+         * @return The connect timeout, in milliseconds.
+         */
+        public int getConnectTimeout() {
+            return connectTimeout;
+        }
+
+        /**
+         * @return The read timeout, in milliseconds.
+         */
+        public int getReadTimeout() {
+            return readTimeout;
+        }
+    }
+
+    /**
+     * The response to a request.
+     */
+    interface Response extends Closeable {
+        /**
+         * @return The URL the response came from, after following redirects.
+         */
+        @NonNull String getUrl();
+
+        /**
+         * @return The HTTP status code.
+         */
+        int getCode();
+
+        /**
+         * Retrieve a response header.
+         *
+         * @param name The name of the header, in any case.
+         * @return The value, or null if the header is not present.
+         */
+        @Nullable String getHeader(@NonNull String name);
+
+        /**
+         * Retrieve the body of the response. Only called for successful responses.
+         *
+         * @return The body.
+         * @throws IOException If the body could not be opened.
+         */
+        @NonNull InputStream getBody() throws IOException;
+
+        /**
+         * Release the response. If the whole body was read, the connection should
+         * be kept for reuse, otherwise the rest of the body should not be downloaded.
+         */
+        @Override
+        void close();
+    }
+
+    /**
+     * Thrown when a connection could not be established within the connect timeout.
+     */
+    class ConnectTimeoutException extends SocketTimeoutException {
+        /**
+         * Create the exception.
+         *
+         * @param message The message.
+         */
+        public ConnectTimeoutException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package tk.nathanf.chatthread.components.loading;
+
+import java.util.concurrent.Future;
+
+/**
+ * A handle to an asynchronous load started through the {@link Loader}.
+ *
+ * Cancelling a handle before the load starts will prevent it from ever running,
+ * cancelling it while it is running will interrupt the load and prevent its
+ * result from being delivered.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class LoadHandle {
+    /**
+     * Whether or not this load has been cancelled.
+     */
+    private volatile boolean cancelled = false;
+
+    /**
+     * The Future backing this load, if it has been submitted.
+     */
+    private volatile Future<?> future;
+
+    /**
+     * Whether or not the content being loaded is currently on screen.
+     */
+    private volatile boolean visible = true;
+
+    /**
+     * Create a new LoadHandle.
+     */
+    LoadHandle() {}
+
+    /**
+     * Set the Future backing this load.
+     *
+     * @param future The Future.
+     */
+    void setFuture(Future<?> future) {
+        this.future = future;
+        if (this.cancelled) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * Cancel the load. This has no effect if the load has already completed.
+     */
+    public void cancel() {
+        this.cancelled = true;
+        Future<?> future = this.future;
+        if (future != null) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * @return true if this load has been cancelled, false otherwise.
+     */
+    public boolean isCancelled() {
+        return this.cancelled;
+    }
+
+    /**
+     * Set whether or not the content being loaded is currently on screen. Network
+     * fetches for visible loads are started before those for loads that are not.
+     *
+     * @param visible true if the content is on screen.
+     */
+    public void setVisible(boolean visible) {
+        this.visible = visible;
+        FetchScheduler.onPriorityChanged();
+    }
+
+    /**
+     * @return true if the content being loaded is currently on screen, false otherwise.
+     */
+    public boolean isVisible() {
+        return this.visible;
+    }
+
+    /**
+     * @return true if this load has finished running or has been cancelled, false otherwise.
+     */
+    public boolean isDone() {
+        Future<?> future = this.future;
+        return this.cancelled || (future != null && future.isDone());
+    }
+}
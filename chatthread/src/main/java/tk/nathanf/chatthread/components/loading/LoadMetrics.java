@@ -0,0 +1,136 @@
+package tk.nathanf.chatthread.components.loading;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters for the remote fetches made while loading content.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class LoadMetrics {
+    /**
+     * The reason a fetch was aborted.
+     */
+    public enum AbortReason {
+        /**
+         * The connection could not be established within the connect timeout.
+         */
+        ConnectTimeout,
+
+        /**
+         * The server stopped sending data for longer than the read timeout.
+         */
+        ReadTimeout,
+
+        /**
+         * The response was larger than the maximum size for its kind of resource.
+         */
+        TooLarge,
+
+        /**
+         * The response took longer than the deadline to read in full.
+         */
+        Deadline
+    }
+
+    /**
+     * Listener notified every time a fetch is aborted.
+     */
+    public interface Listener {
+        /**
+         * Called when a fetch is aborted. This is called on the thread the fetch was
+         * running on, not on the main thread.
+         *
+         * @param url      The URL that was being fetched.
+         * @param resource The kind of resource that was being fetched.
+         * @param reason   The reason the fetch was aborted.
+         */
+        void onAbort(
+            @NonNull String url, @NonNull Http.Resource resource, @NonNull AbortReason reason
+        );
+    }
+
+    /**
+     * The number of aborted fetches, indexed by resource and then by reason.
+     */
+    private static final AtomicLongArray aborts = new AtomicLongArray(
+        Http.Resource.values().length * AbortReason.values().length
+    );
+
+    /**
+     * The listener, if any.
+     */
+    private static volatile Listener listener;
+
+    private LoadMetrics() {}
+
+    /**
+     * Set the listener to notify every time a fetch is aborted.
+     *
+     * @param listener The listener, or null to remove it.
+     */
+    public static void setListener(@Nullable Listener listener) {
+        LoadMetrics.listener = listener;
+    }
+
+    /**
+     * Retrieve the number of fetches aborted for a reason.
+     *
+     * @param resource The kind of resource.
+     * @param reason   The reason.
+     * @return The number of fetches aborted since the counters were last reset.
+     */
+    public static long getAbortCount(@NonNull Http.Resource resource, @NonNull AbortReason reason) {
+        return aborts.get(indexOf(resource, reason));
+    }
+
+    /**
+     * Retrieve the number of fetches aborted for any reason.
+     *
+     * @return The number of fetches aborted since the counters were last reset.
+     */
+    public static long getAbortCount() {
+        long total = 0;
+        for (int i = 0; i < aborts.length(); i++) {
+            total += aborts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Reset all of the counters to zero.
+     */
+    public static void reset() {
+        for (int i = 0; i < aborts.length(); i++) {
+            aborts.set(i, 0);
+        }
+    }
+
+    /**
+     * Record an aborted fetch.
+     *
+     * @param url      The URL that was being fetched.
+     * @param resource The kind of resource that was being fetched.
+     * @param reason   The reason the fetch was aborted.
+     */
+    static void recordAbort(String url, Http.Resource resource, AbortReason reason) {
+        aborts.incrementAndGet(indexOf(resource, reason));
+        Listener listener = LoadMetrics.listener;
+        if (listener != null) {
+            listener.onAbort(url, resource, reason);
+        }
+    }
+
+    /**
+     * Retrieve the index of the counter for a resource and reason.
+     *
+     * @param resource The kind of resource.
+     * @param reason   The reason.
+     * @return The index.
+     */
+    private static int indexOf(Http.Resource resource, AbortReason reason) {
+        return resource.ordinal() * AbortReason.values().length + reason.ordinal();
+    }
+}
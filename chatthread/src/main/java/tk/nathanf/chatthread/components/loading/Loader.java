@@ -0,0 +1,127 @@
+package tk.nathanf.chatthread.components.loading;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared executor used to load remote content for Messages and Authors.
+ *
+ * Loads are run on a small pool of background threads. Pending loads are served
+ * newest-first so that the rows the user is currently looking at are loaded before
+ * rows that were requested earlier and have likely scrolled away.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class Loader {
+    /**
+     * A unit of work to be run by the Loader.
+     */
+    public interface Task {
+        /**
+         * Perform the load. Implementations should check {@link LoadHandle#isCancelled()}
+         * between expensive steps and return early once the load has been cancelled.
+         *
+         * @param handle The handle for this load.
+         * @throws Exception If the load fails.
+         */
+        void load(@NonNull LoadHandle handle) throws Exception;
+    }
+
+    /**
+     * The number of threads used for loading.
+     */
+    private static final int THREAD_COUNT = 4;
+
+    /**
+     * Handler used to post results to the main thread.
+     */
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * The Executor used for loading.
+     */
+    private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+        THREAD_COUNT, THREAD_COUNT, 30, TimeUnit.SECONDS,
+        new LinkedBlockingDeque<Runnable>() {
+            @Override
+            public boolean offer(@NonNull Runnable runnable) {
+                return super.offerFirst(runnable);
+            }
+        },
+        new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(@NonNull final Runnable runnable) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "chatthread-loader-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        }
+    );
+
+    static {
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    private Loader() {}
+
+    /**
+     * Submit a Task to be loaded in the background.
+     *
+     * @param task The Task.
+     * @return The handle that can be used to cancel the load.
+     */
+    public static @NonNull LoadHandle submit(@NonNull final Task task) {
+        final LoadHandle handle = new LoadHandle();
+        handle.setFuture(executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                if (handle.isCancelled()) {
+                    return;
+                }
+
+                try {
+                    task.load(handle);
+                } catch (InterruptedException ignored) {
+                } catch (Exception e) {
+                    if (!handle.isCancelled()) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }));
+        return handle;
+    }
+
+    /**
+     * Post a result to the main thread, unless the load it belongs to has been cancelled.
+     *
+     * @param handle   The handle for the load.
+     * @param runnable The runnable to run on the main thread.
+     */
+    public static void deliver(@NonNull final LoadHandle handle, @NonNull final Runnable runnable) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!handle.isCancelled()) {
+                    runnable.run();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,180 @@
+package tk.nathanf.chatthread.components.loading;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Map;
+
+/**
+ * The default {@link HttpTransport}, built on {@link HttpURLConnection}.
+ *
+ * Connections are kept alive and pooled by the platform as long as responses are
+ * read to the end before being closed, and responses are transparently gzip
+ * decompressed. Responses that are closed early are disconnected instead, so the
+ * rest of their body is never downloaded.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class UrlConnectionTransport implements HttpTransport {
+    /**
+     * The User-Agent sent with every request, or null to use the platform's.
+     */
+    private final String userAgent;
+
+    /**
+     * Create the transport with the platform's User-Agent.
+     */
+    public UrlConnectionTransport() {
+        this(null);
+    }
+
+    /**
+     * Create the transport.
+     *
+     * @param userAgent The User-Agent to send with every request, or null to use the platform's.
+     */
+    public UrlConnectionTransport(@Nullable String userAgent) {
+        this.userAgent = userAgent;
+    }
+
+    @Override
+    public @NonNull Response execute(@NonNull Request request) throws IOException {
+        URLConnection connection = new URL(request.getUrl()).openConnection();
+        connection.setConnectTimeout(request.getConnectTimeout());
+        connection.setReadTimeout(request.getReadTimeout());
+        if (this.userAgent != null) {
+            connection.setRequestProperty("User-Agent", this.userAgent);
+        }
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+
+        try {
+            connection.connect();
+        } catch (SocketTimeoutException e) {
+            disconnect(connection);
+            throw new ConnectTimeoutException("Connecting to " + request.getUrl() + " timed out");
+        }
+
+        try {
+            // Wait for the response headers.
+            if (connection instanceof HttpURLConnection) {
+                ((HttpURLConnection) connection).getResponseCode();
+            }
+        } catch (IOException e) {
+            disconnect(connection);
+            throw e;
+        }
+
+        return new ConnectionResponse(connection);
+    }
+
+    /**
+     * Close a connection without reading the rest of its response.
+     *
+     * @param connection The connection.
+     */
+    private static void disconnect(URLConnection connection) {
+        if (connection instanceof HttpURLConnection) {
+            ((HttpURLConnection) connection).disconnect();
+        }
+    }
+
+    /**
+     * A response backed by a URLConnection.
+     */
+    private static final class ConnectionResponse implements Response {
+        private final URLConnection connection;
+        private BodyInputStream body;
+
+        ConnectionResponse(URLConnection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public @NonNull String getUrl() {
+            return connection.getURL().toString();
+        }
+
+        @Override
+        public int getCode() {
+            if (!(connection instanceof HttpURLConnection)) {
+                return HttpURLConnection.HTTP_OK;
+            }
+
+            try {
+                return ((HttpURLConnection) connection).getResponseCode();
+            } catch (IOException e) {
+                return -1;
+            }
+        }
+
+        @Override
+        public @Nullable String getHeader(@NonNull String name) {
+            return connection.getHeaderField(name);
+        }
+
+        @Override
+        public @NonNull InputStream getBody() throws IOException {
+            if (this.body == null) {
+                this.body = new BodyInputStream(connection.getInputStream());
+            }
+            return this.body;
+        }
+
+        @Override
+        public void close() {
+            if (this.body != null && this.body.finished) {
+                // Closing a fully read body returns the connection to the pool.
+                try {
+                    this.body.close();
+                } catch (IOException ignored) {}
+            } else {
+                disconnect(connection);
+            }
+        }
+    }
+
+    /**
+     * A response body that remembers whether it was read to the end.
+     */
+    private static final class BodyInputStream extends FilterInputStream {
+        private volatile boolean finished = false;
+
+        BodyInputStream(InputStream input) {
+            super(input);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read == -1) {
+                this.finished = true;
+            }
+            return read;
+        }
+
+        @Override
+        public int read(@NonNull byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read == -1) {
+                this.finished = true;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // An unfinished body is discarded by disconnecting, closing it would drain it.
+            if (this.finished) {
+                super.close();
+            }
+        }
+    }
+}
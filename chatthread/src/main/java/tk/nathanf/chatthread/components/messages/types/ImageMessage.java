@@ -1,10 +1,8 @@
 package tk.nathanf.chatthread.components.messages.types;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.lang.String;
 import java.lang.RuntimeException;
-import java.net.URL;
 import java.util.Date;
 
 import android.content.Context;
@@ -13,16 +11,15 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
-import android.os.Handler;
-import android.os.Looper;
-import android.util.Log;
 import android.util.Patterns;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
+import androidx.annotation.NonNull;
 import androidx.constraintlayout.widget.ConstraintLayout;
 
+import com.makeramen.roundedimageview.RoundedDrawable;
 import com.makeramen.roundedimageview.RoundedImageView;
 
 import tk.nathanf.chatthread.activities.PreviewImage;
@@ -31,17 +28,66 @@ import tk.nathanf.chatthread.components.Author;
 import tk.nathanf.chatthread.components.Message;
 import tk.nathanf.chatthread.components.MessageParameters;
 import tk.nathanf.chatthread.components.MessageThreadListAdapter;
+import tk.nathanf.chatthread.components.dates.MessageDateFormatter;
+import tk.nathanf.chatthread.components.loading.Http;
+import tk.nathanf.chatthread.components.loading.LoadHandle;
+import tk.nathanf.chatthread.components.loading.Loader;
+import tk.nathanf.chatthread.util.BlurHash;
 
 /**
  * Representation of an Image message.
  */
 @SuppressWarnings("unused")
 public final class ImageMessage extends Message {
+    /**
+     * Draws a placeholder scaled up to the size of the image it is standing in for.
+     */
+    private static final class PlaceholderDrawable extends RoundedDrawable {
+        private final int width;
+        private final int height;
+
+        PlaceholderDrawable(Bitmap placeholder, int width, int height) {
+            super(placeholder);
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public int getIntrinsicWidth() {
+            return this.width;
+        }
+
+        @Override
+        public int getIntrinsicHeight() {
+            return this.height;
+        }
+    }
+
+    /**
+     * The size of the longest edge of placeholders decoded from a BlurHash.
+     */
+    private static final int PLACEHOLDER_SIZE = 32;
+
     /**
      * The image to display.
      */
     private Bitmap image;
 
+    /**
+     * A small placeholder displayed, scaled up, until the image has been loaded.
+     */
+    private Bitmap placeholder;
+
+    /**
+     * The width of the full image the placeholder is standing in for.
+     */
+    private int placeholderWidth;
+
+    /**
+     * The height of the full image the placeholder is standing in for.
+     */
+    private int placeholderHeight;
+
     /**
      * The name to use for the image when it is downloaded.
      */
@@ -52,6 +98,16 @@ public final class ImageMessage extends Message {
      */
     private boolean loaded = false;
 
+    /**
+     * The URL the image is loaded from, if any.
+     */
+    private String url;
+
+    /**
+     * The handle for the load currently in progress, if any.
+     */
+    private LoadHandle loadHandle;
+
     /**
      * Empty Constructor required for Parsing messages.
      * DO NOT USE THIS TO INSTANTIATE THIS CLASS.
@@ -83,41 +139,146 @@ public final class ImageMessage extends Message {
      * @param image The Image.
      */
     public void setImage(Bitmap image) {
+        this.cancelLoading();
+        this.url = null;
         this.image = image;
+        this.placeholder = null;
         this.loaded = true;
     }
 
+    /**
+     * Set a placeholder to display until the image set with {@link ImageMessage#setImage(String)}
+     * has been loaded. The image is only displayed once it has been downloaded in full and
+     * decoded, so a placeholder is the only way to show something before then. The
+     * placeholder can be much smaller than the image, it will be scaled up to the size the
+     * full image will be displayed at, so the row does not change size once the image arrives.
+     *
+     * @param placeholder The placeholder.
+     * @param width       The width of the full image, in pixels.
+     * @param height      The height of the full image, in pixels.
+     */
+    public void setPlaceholder(Bitmap placeholder, int width, int height) {
+        this.placeholder = placeholder;
+        this.placeholderWidth = width;
+        this.placeholderHeight = height;
+    }
+
+    /**
+     * Set a placeholder from a BlurHash to display until the image set with
+     * {@link ImageMessage#setImage(String)} has been loaded. The hash is decoded straight
+     * away, so the placeholder is displayed before any of the image has been downloaded.
+     *
+     * @param blurHash The BlurHash.
+     * @param width    The width of the full image.
+     * @param height   The height of the full image.
+     * @throws IllegalArgumentException If the hash is not a valid BlurHash.
+     * @see BlurHash
+     */
+    public void setPlaceholderHash(String blurHash, int width, int height) {
+        int placeholderWidth = PLACEHOLDER_SIZE;
+        int placeholderHeight = PLACEHOLDER_SIZE;
+        if (width > height) {
+            placeholderHeight = Math.max(1, PLACEHOLDER_SIZE * height / width);
+        } else if (height > width) {
+            placeholderWidth = Math.max(1, PLACEHOLDER_SIZE * width / height);
+        }
+
+        this.setPlaceholder(
+            BlurHash.decode(blurHash, placeholderWidth, placeholderHeight), width, height
+        );
+    }
+
     /**
      * Set the Image based on a URL. This will load the image in. Once the image is loaded in,
      * if this ImageMessage is attached to an Adapter,
-     * {@link MessageThreadListAdapter#notifyDataSetChanged()} will be called.
+     * {@link MessageThreadListAdapter#notifyMessageChanged(Message)} will be called.
+     *
+     * If the load is cancelled with {@link ImageMessage#cancelLoading()} before it completes,
+     * it will be restarted the next time this Message is bound to a View.
      *
      * @param url The URL.
+     * @return The handle for the load.
      */
-    public void setImage(final String url) {
-        new Thread(new Runnable() {
+    public LoadHandle setImage(final String url) {
+        this.cancelLoading();
+        this.url = url;
+        this.image = null;
+        this.loaded = false;
+        return this.load();
+    }
+
+    /**
+     * Load the image from the currently set URL.
+     *
+     * @return The handle for the load.
+     */
+    private LoadHandle load() {
+        final String url = this.url;
+        this.loadHandle = Loader.submit(new Loader.Task() {
             @Override
-            public void run() {
+            public void load(@NonNull final LoadHandle handle) {
+                Bitmap result = null;
                 try {
-                    InputStream input = new URL(url).openStream();
-                    image = BitmapFactory.decodeStream(input);
-                    Log.d("PPD", "Finished load of avatar");
+                    byte[] data = Http.readFully(url, Http.Resource.Image);
+
+                    if (handle.isCancelled()) {
+                        return;
+                    }
+
+                    result = BitmapFactory.decodeByteArray(
+                        data, 0, data.length, getDecodePolicy().toOptions()
+                    );
                 } catch (IOException e) {
-                    image = null;
-                    e.printStackTrace();
-                } finally {
-                    new Handler(Looper.getMainLooper()).post(new Runnable() {
-                        @Override
-                        public void run() {
-                            if (getAdapter() != null) {
-                                loaded = true;
-                                getAdapter().notifyDataSetChanged();
-                            }
-                        }
-                    });
+                    if (!handle.isCancelled()) {
+                        e.printStackTrace();
+                    }
                 }
+
+                final Bitmap loadedImage = result;
+                Loader.deliver(handle, new Runnable() {
+                    @Override
+                    public void run() {
+                        image = loadedImage;
+                        placeholder = null;
+                        loaded = true;
+                        if (loadHandle == handle) {
+                            loadHandle = null;
+                        }
+                        if (getAdapter() != null) {
+                            getAdapter().notifyMessageChanged(ImageMessage.this);
+                        }
+                    }
+                });
             }
-        }).start();
+        });
+        return this.loadHandle;
+    }
+
+    /**
+     * Retrieve the policy to decode the image with, from the Parameters of the
+     * MessageThread this Message is displayed in.
+     *
+     * @return The decode policy.
+     */
+    private MessageParameters.DecodePolicy getDecodePolicy() {
+        MessageThreadListAdapter adapter = this.getAdapter();
+        MessageParameters parameters = adapter == null ? null : adapter.getParameters();
+        return parameters == null
+            ? MessageParameters.DEFAULT_IMAGE_DECODE_POLICY
+            : parameters.getImageDecodePolicy();
+    }
+
+    /**
+     * Cancel the image load, if one is in progress.
+     *
+     * @see Message#cancelLoading()
+     */
+    @Override
+    public void cancelLoading() {
+        if (this.loadHandle != null) {
+            this.loadHandle.cancel();
+            this.loadHandle = null;
+        }
     }
 
     /**
@@ -131,7 +292,7 @@ public final class ImageMessage extends Message {
      * @throws RuntimeException if the Layout Inflater service cannot be reached.
      */
     @Override
-    public View createView(final MessageParameters parameters, ViewGroup parent) {
+    public View createView(MessageParameters parameters, ViewGroup parent) {
         LayoutInflater inflater = (LayoutInflater)this.getContext()
                 .getSystemService(Context.LAYOUT_INFLATER_SERVICE);
         if (inflater == null) {
@@ -140,26 +301,24 @@ public final class ImageMessage extends Message {
         View view = inflater.inflate(R.layout.message_image, parent, false);
         RoundedImageView imageView = view.findViewById(R.id.previewImage);
         imageView.setImageBitmap(this.image);
-        float[] rads = parameters.getMessageRadiusPx();
-        imageView.setCornerRadius(rads[0]);
-
-        imageView.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View view) {
-                PreviewImage.currentlyDisplayedImage = ImageMessage.this.image;
-                PreviewImage.currentlyDisplayedImageName = ImageMessage.this.name;
-                PreviewImage.currentlyDisplayedImageAuthor = ImageMessage.this.getAuthor();
-                PreviewImage.currentlyDisplayedImageDate = parameters.getDateFormatter().format(
-                    ImageMessage.this.getSentOn()
-                );
-                Intent intent = new Intent(getContext(), PreviewImage.previewActivity);
-                getContext().startActivity(intent);
-            }
-        });
 
         return view;
     }
 
+    /**
+     * Style the View.
+     *
+     * @param parameters The Parameters.
+     * @param view       The View.
+     * @see Message#styleView(MessageParameters, View)
+     */
+    @Override
+    public void styleView(MessageParameters parameters, View view) {
+        RoundedImageView imageView = view.findViewById(R.id.previewImage);
+        float[] rads = parameters.getMessageRadiusPx();
+        imageView.setCornerRadius(rads[0]);
+    }
+
     /**
      * Bind this Message to a View.
      *
@@ -168,20 +327,47 @@ public final class ImageMessage extends Message {
      * @see Message#bindView(MessageParameters, View)
      */
     @Override
-    public void bindView(MessageParameters parameters, View view) {
+    public void bindView(final MessageParameters parameters, View view) {
         ConstraintLayout loadingLayout = view.findViewById(R.id.loadingLayout);
         RoundedImageView imageView = view.findViewById(R.id.previewImage);
 
+        // Set in bind so the row opens the Message it is currently bound to.
+        imageView.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                PreviewImage.currentlyDisplayedImage = ImageMessage.this.image;
+                PreviewImage.currentlyDisplayedImageName = ImageMessage.this.name;
+                PreviewImage.currentlyDisplayedImageAuthor = ImageMessage.this.getAuthor();
+                MessageDateFormatter formatter = parameters.getDateFormatter();
+                PreviewImage.currentlyDisplayedImageDate = formatter.format(
+                    new Date(ImageMessage.this.getSentOnMillis()), formatter.now()
+                );
+                Intent intent = new Intent(getContext(), PreviewImage.previewActivity);
+                getContext().startActivity(intent);
+            }
+        });
+
         if (this.loaded) {
             loadingLayout.setVisibility(View.INVISIBLE);
             imageView.setVisibility(View.VISIBLE);
             imageView.setImageBitmap(this.image);
+        } else if (this.placeholder != null) {
+            // The placeholder reports the size of the full image, so the View is measured
+            // exactly as it will be once the image arrives: clamped to the width available
+            // in the row, with the aspect ratio of the image.
+            loadingLayout.setVisibility(View.INVISIBLE);
+            imageView.setVisibility(View.VISIBLE);
+            imageView.setImageDrawable(new PlaceholderDrawable(
+                this.placeholder, this.placeholderWidth, this.placeholderHeight
+            ));
         } else {
             loadingLayout.setVisibility(View.VISIBLE);
             imageView.setVisibility(View.INVISIBLE);
         }
 
-        imageView.requestLayout();
+        if (!this.loaded && this.url != null && this.loadHandle == null) {
+            this.load();
+        }
     }
 
     /**
@@ -3,13 +3,9 @@ package tk.nathanf.chatthread.components.messages.types;
 import android.content.Context;
 import android.content.Intent;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.PorterDuff;
 import android.graphics.PorterDuffColorFilter;
-import android.media.MediaMetadataRetriever;
 import android.net.Uri;
-import android.os.Looper;
-import android.os.Handler;
 import android.text.TextUtils;
 import android.text.util.Linkify;
 import android.util.Patterns;
@@ -19,29 +15,24 @@ import android.view.ViewGroup;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 
-import java.io.InputStream;
-import java.net.URI;
-import java.net.URL;
 import java.util.Date;
-import java.util.HashMap;
 import java.lang.RuntimeException;
 import java.lang.String;
 
+import androidx.annotation.NonNull;
 import androidx.constraintlayout.widget.ConstraintLayout;
 
 import com.joooonho.SelectableRoundedImageView;
 
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
-
 import tk.nathanf.chatthread.components.Author;
 import tk.nathanf.chatthread.components.MessageThreadListAdapter;
 import tk.nathanf.chatthread.R;
 import tk.nathanf.chatthread.components.Message;
 import tk.nathanf.chatthread.components.MessageParameters;
-import tk.nathanf.chatthread.util.Measure;
+import tk.nathanf.chatthread.components.previews.PreviewCache;
+import tk.nathanf.chatthread.components.previews.PreviewLoader;
+import tk.nathanf.chatthread.components.previews.PreviewStore;
+import tk.nathanf.chatthread.util.TextStyle;
 
 /**
  * Representation of a PreviewMessage.
@@ -75,10 +66,43 @@ public final class PreviewMessage extends Message implements View.OnClickListene
 
     /**
      * Whether or not this PreviewMessage is loaded yet.
-     * @see PreviewMessage#loadAsync()
+     * @see PreviewMessage#loadAsync(boolean)
      */
     private boolean loaded = false;
 
+    /**
+     * The shared entry for the URL, once loading has started.
+     * @see PreviewMessage#loadAsync(boolean)
+     */
+    private PreviewStore.Entry entry;
+
+    /**
+     * Whether or not this PreviewMessage is waiting for its entry to load.
+     */
+    private boolean loading = false;
+
+    /**
+     * Notified once the entry has loaded.
+     */
+    private final PreviewStore.Listener entryListener = new PreviewStore.Listener() {
+        @Override
+        public void onLoaded(@NonNull PreviewStore.Entry entry) {
+            loading = false;
+            applyEntry();
+            MessageThreadListAdapter adapter = getAdapter();
+            if (adapter != null) {
+                adapter.notifyMessageChanged(PreviewMessage.this);
+            }
+        }
+    };
+
+    /**
+     * Whether or not parsed Preview messages wait until they are displayed, or about
+     * to be, before loading their URL.
+     * @see PreviewMessage#setLazyLoading(boolean)
+     */
+    private static volatile boolean lazyLoading = true;
+
     /**
      * Empty Constructor required for Parsing messages.
      * DO NOT USE THIS TO INSTANTIATE THIS CLASS.
@@ -132,6 +156,9 @@ public final class PreviewMessage extends Message implements View.OnClickListene
      */
     @SuppressWarnings("WeakerAccess")
     public void setUrl(String url) {
+        if (this.entry != null && (url == null || !url.equals(this.url))) {
+            this.release();
+        }
         this.url = url;
     }
 
@@ -189,113 +216,122 @@ public final class PreviewMessage extends Message implements View.OnClickListene
         return text;
     }
 
+    /**
+     * Set whether or not Preview messages created by {@link Message#parse} wait until
+     * they are displayed, or come within the prefetch distance of a displayed row, before
+     * loading their URL. When disabled, every parsed Preview message starts loading
+     * immediately. Defaults to true.
+     *
+     * @param lazyLoading True to load lazily.
+     * @see MessageThreadListAdapter#setPrefetchDistance(int)
+     */
+    public static void setLazyLoading(boolean lazyLoading) {
+        PreviewMessage.lazyLoading = lazyLoading;
+    }
+
+    /**
+     * Retrieve whether or not parsed Preview messages load lazily.
+     *
+     * @return True if they load lazily.
+     */
+    public static boolean isLazyLoading() {
+        return lazyLoading;
+    }
+
     /**
      * Load the Message asynchronously based on the currently set URL.
+     * The content is shared with every other PreviewMessage with the same URL through
+     * the {@link PreviewStore}, and read from the {@link PreviewCache} when possible.
+     *
+     * If the URL has already been loaded for another Message, the content is applied
+     * immediately. Otherwise, once it has loaded, if the Message has an Adapter set it
+     * will call {@link MessageThreadListAdapter#notifyMessageChanged(Message)}.
+     *
+     * @param visible Whether or not this Message is on screen.
+     */
+    private void loadAsync(boolean visible) {
+        if (this.entry == null) {
+            this.entry = PreviewStore.acquire(this.url);
+        }
+
+        if (this.entry.isLoaded()) {
+            this.applyEntry();
+            return;
+        }
+
+        this.loading = true;
+        this.entry.load(getContext(), getDecodePolicy(), this.entryListener, visible);
+    }
+
+    /**
+     * Apply the content of the loaded entry to this Message.
+     */
+    private void applyEntry() {
+        PreviewLoader.Result result = this.entry.getResult();
+        if (result != null) {
+            this.image = result.getImage();
+            this.title = result.getTitle();
+            this.content = result.getDescription();
+        }
+        this.loaded = true;
+    }
+
+    /**
+     * Retrieve the policy to decode preview images with, from the Parameters of the
+     * MessageThread this Message is displayed in.
      *
-     * Once this is completed, if the Message has an Adapter set it will call
-     * {@link MessageThreadListAdapter#notifyDataSetChanged()}.
-     */
-    private void loadAsync() {
-        new Thread(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    String path = new URI(PreviewMessage.this.url).getPath();
-                    String title = path.substring(path.lastIndexOf("/") + 1);
-                    String description = "Tap to open in browser";
-                    Bitmap image = null;
-
-                    // Try to load a frame from a video, if one exists.
-                    MediaMetadataRetriever mediaMetadataRetriever = null;
-                    try {
-                        mediaMetadataRetriever = new MediaMetadataRetriever();
-                        mediaMetadataRetriever.setDataSource(url, new HashMap<String, String>());
-                        image = mediaMetadataRetriever.getFrameAtTime();
-                    } catch (Exception ignored) { } finally {
-                        if (mediaMetadataRetriever != null) {
-                            mediaMetadataRetriever.release();
-                        }
-                    }
-
-                    // If no frame could be loaded since this was not a video,
-                    // attempt to load the largest image from the URL.
-                    if (image == null) {
-                        Document document = Jsoup.connect(url).get();
-                        if (url.contains("youtube.com/watch?v=")) {
-                            String imageUrl = document
-                                    .select("link[itemprop=thumbnailUrl]")
-                                    .first()
-                                    .absUrl("href");
-                            InputStream input = new URL(imageUrl).openStream();
-                            image = BitmapFactory.decodeStream(input);
-                        } else {
-                            Elements imgs = document.getElementsByTag("img");
-                            Bitmap largestImage = null;
-                            for (Element element : imgs) {
-                                if (largestImage == null) {
-                                    if (element.hasAttr("src")) {
-                                        String absUrl = element.absUrl("src");
-                                        InputStream input = new URL(absUrl).openStream();
-                                        largestImage = BitmapFactory.decodeStream(input);
-                                    }
-
-                                    continue;
-                                }
-
-                                if (element.hasAttr("src")) {
-                                    String absUrl = element.absUrl("src");
-                                    InputStream input = new URL(absUrl).openStream();
-                                    Bitmap newImage = BitmapFactory.decodeStream(input);
-                                    if (
-                                        newImage.getWidth() * newImage.getHeight() >
-                                        largestImage.getWidth() * largestImage.getHeight()
-                                    ) {
-                                        largestImage = newImage;
-                                    }
-                                }
-                            }
-
-                            if (largestImage != null) {
-                                image = largestImage;
-                            }
-                        }
-
-                        title = document.title();
-                        if (title == null || title.trim().length() < 1) {
-                            title = url;
-                        }
-
-                        if (title.equals(url)) {
-                            description = url;
-                        } else {
-                            description = document.body().text();
-                            Elements metaElements = document.getElementsByTag("meta");
-                            for (Element element : metaElements) {
-                                if (element.hasAttr("name")) {
-                                    if (element.attr("name").equalsIgnoreCase("description")) {
-                                        description = element.attr("content");
-                                    }
-                                }
-                            }
-                        }
-                    }
-
-                    PreviewMessage.this.setImage(image);
-                    PreviewMessage.this.setTitle(title);
-                    PreviewMessage.this.setContent(description);
-                } catch (Exception ignored) {}
-                PreviewMessage.this.loaded = true;
-                new Handler(Looper.getMainLooper()).post(new Runnable() {
-                    @Override
-                    public void run() {
-                        MessageThreadListAdapter adapter = PreviewMessage.this.getAdapter();
-                        if (adapter != null) {
-                            adapter.notifyDataSetChanged();
-                        }
-                    }
-                });
+     * @return The decode policy.
+     */
+    private MessageParameters.DecodePolicy getDecodePolicy() {
+        MessageThreadListAdapter adapter = this.getAdapter();
+        MessageParameters parameters = adapter == null ? null : adapter.getParameters();
+        return parameters == null
+            ? MessageParameters.DEFAULT_PREVIEW_DECODE_POLICY
+            : parameters.getPreviewDecodePolicy();
+    }
+
+    /**
+     * Start loading the preview ahead of it being displayed, behind the loads of
+     * Messages that are on screen.
+     *
+     * @see Message#prefetch()
+     */
+    @Override
+    public void prefetch() {
+        if (!this.loaded && this.url != null && !this.loading) {
+            this.loadAsync(false);
+            if (this.loaded && this.getAdapter() != null) {
+                this.getAdapter().notifyMessageChanged(this);
             }
-        }).start();
+        }
+    }
+
+    /**
+     * Stop waiting for the preview to load. The shared load is only cancelled
+     * if no other Message is waiting for it.
+     *
+     * @see Message#cancelLoading()
+     */
+    @Override
+    public void cancelLoading() {
+        if (this.loading) {
+            this.entry.removeListener(this.entryListener);
+            this.loading = false;
+        }
+    }
+
+    /**
+     * Release the shared entry for the URL.
+     *
+     * @see Message#release()
+     */
+    @Override
+    public void release() {
+        this.cancelLoading();
+        if (this.entry != null) {
+            PreviewStore.release(this.entry);
+            this.entry = null;
+        }
     }
 
     /**
@@ -315,10 +351,24 @@ public final class PreviewMessage extends Message implements View.OnClickListene
             throw new RuntimeException("Unable to bind to the Layout Inflater service.");
         }
         View view = inflater.inflate(R.layout.messsage_preview, parent, false);
+        SelectableRoundedImageView previewImage = view.findViewById(R.id.previewImage);
+        previewImage.setCornerRadiiDP(0,0,0,0);
+
+        return view;
+    }
+
+    /**
+     * Style the View.
+     *
+     * @param parameters The Parameters.
+     * @param view       The View.
+     * @see Message#styleView(MessageParameters, View)
+     */
+    @Override
+    public void styleView(MessageParameters parameters, View view) {
         TextView titleText = view.findViewById(R.id.titleText);
         TextView descriptionText = view.findViewById(R.id.descriptionText);
         TextView urlText = view.findViewById(R.id.urlText);
-        SelectableRoundedImageView previewImage = view.findViewById(R.id.previewImage);
         ProgressBar progressBar = view.findViewById(R.id.progressBar);
         progressBar.getIndeterminateDrawable()
             .setColorFilter(
@@ -326,19 +376,15 @@ public final class PreviewMessage extends Message implements View.OnClickListene
                     parameters.getProgressBarColor(), PorterDuff.Mode.SRC_IN
                 )
             );
-        previewImage.setCornerRadiiDP(0,0,0,0);
 
-        if (this.getAuthor().getSource() == Source.Self) {
-            titleText.setTextColor(parameters.getSentMessageTextColor());
-            descriptionText.setTextColor(parameters.getSentMessageTextColor());
-            urlText.setTextColor(parameters.getSentMessageTextColor());
-        } else {
-            titleText.setTextColor(parameters.getReceivedMessageTextColor());
-            descriptionText.setTextColor(parameters.getReceivedMessageTextColor());
-            urlText.setTextColor(parameters.getReceivedMessageTextColor());
+        int color = this.getAuthor().getSource() == Source.Self
+            ? parameters.getSentMessageTextColor()
+            : parameters.getReceivedMessageTextColor();
+        for (TextView textView : new TextView[] {titleText, descriptionText, urlText}) {
+            TextStyle.setTypeface(textView, parameters.getMessageFont());
+            TextStyle.setTextSizeSp(textView, parameters.getMessageFontSizeSp());
+            TextStyle.setTextColor(textView, color);
         }
-
-        return view;
     }
 
     /**
@@ -356,49 +402,48 @@ public final class PreviewMessage extends Message implements View.OnClickListene
         TextView urlText = view.findViewById(R.id.urlText);
         ConstraintLayout loadingLayout = view.findViewById(R.id.loadingLayout);
 
-        titleText.setTypeface(parameters.getMessageFont());
-        titleText.setTextSize(parameters.getMessageFontSizeSp());
-        descriptionText.setTypeface(parameters.getMessageFont());
-        descriptionText.setTextSize(parameters.getMessageFontSizeSp());
-        urlText.setTypeface(parameters.getMessageFont());
-        urlText.setTextSize(parameters.getMessageFontSizeSp());
+        if (!this.loaded && this.url != null) {
+            if (!this.loading) {
+                this.loadAsync(true);
+            } else {
+                // A prefetched load is now on screen.
+                this.entry.setVisible(this.entryListener, true);
+            }
+        }
 
         if (this.loaded) {
+            MessageParameters.Dimensions dimensions = parameters.getDimensions();
+            int dp16 = dimensions.getDp16();
             previewImage.setVisibility(View.VISIBLE);
             titleText.setVisibility(View.VISIBLE);
             descriptionText.setVisibility(View.VISIBLE);
             urlText.setVisibility(View.VISIBLE);
             loadingLayout.setVisibility(View.INVISIBLE);
+            int imageHeight = this.image != null ? dimensions.getPreviewImageHeight() : 0;
+            ViewGroup.LayoutParams imageParams = previewImage.getLayoutParams();
+            if (imageParams.width != 0 || imageParams.height != imageHeight) {
+                imageParams.width = 0;
+                imageParams.height = imageHeight;
+                previewImage.requestLayout();
+            }
             if (this.image != null) {
-                previewImage.getLayoutParams().width = 0;
-                previewImage.getLayoutParams().height = (int)Measure.dpToPx(120, getContext());
                 previewImage.setImageBitmap(this.image);
-                float dp16 = Measure.dpToPx(16, getContext());
-                ((ConstraintLayout.LayoutParams)titleText.getLayoutParams()).setMargins(
-                    (int)dp16, (int)dp16, 0, 0
-                );
-                titleText.requestLayout();
-            } else {
-                previewImage.getLayoutParams().width = 0;
-                previewImage.getLayoutParams().height = 0;
-                float dp16 = Measure.dpToPx(16, getContext());
-                ((ConstraintLayout.LayoutParams)titleText.getLayoutParams()).setMargins(
-                    (int)dp16, 0, 0, 0
-                );
-                titleText.requestLayout();
             }
-            titleText.setText(this.title);
-            descriptionText.setText(this.content);
-            urlText.setText(this.text);
-            Linkify.addLinks(urlText, Linkify.ALL);
-            urlText.setLinksClickable(true);
-            if (this.content.equals(this.url) && this.title.equals(this.url)) {
+            TextStyle.setMargins(titleText, dp16, this.image != null ? dp16 : 0, 0, 0);
+            TextStyle.setText(titleText, this.title);
+            TextStyle.setText(descriptionText, this.content);
+            if (TextStyle.setText(urlText, this.text)) {
+                Linkify.addLinks(urlText, Linkify.ALL);
+                urlText.setLinksClickable(true);
+            }
+            boolean titleIsUrl = PreviewStore.isSameUrl(this.title, this.url);
+            if (titleIsUrl && PreviewStore.isSameUrl(this.content, this.url)) {
                 titleText.setVisibility(View.GONE);
                 descriptionText.setVisibility(View.GONE);
             } else {
                 titleText.setVisibility(View.VISIBLE);
                 descriptionText.setVisibility(View.VISIBLE);
-                if (this.title.equals(this.url)) {
+                if (titleIsUrl) {
                     titleText.setEllipsize(TextUtils.TruncateAt.END);
                     titleText.setMaxLines(2);
                 } else {
@@ -497,7 +542,9 @@ public final class PreviewMessage extends Message implements View.OnClickListene
                 message.setUrl(word);
                 message.setText(value);
                 message.setSentOn(sentOn);
-                message.loadAsync();
+                if (!lazyLoading) {
+                    message.loadAsync(true);
+                }
                 return new Message[]{message};
             }
         }
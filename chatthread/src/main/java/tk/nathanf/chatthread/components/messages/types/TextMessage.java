@@ -11,6 +11,7 @@ import androidx.constraintlayout.widget.ConstraintLayout;
 import tk.nathanf.chatthread.components.Author;
 import tk.nathanf.chatthread.components.Message;
 import tk.nathanf.chatthread.components.MessageParameters;
+import tk.nathanf.chatthread.util.TextStyle;
 
 /**
  * Representation of a Text Message.
@@ -70,13 +71,26 @@ public final class TextMessage extends Message {
             ConstraintLayout.LayoutParams.WRAP_CONTENT
         ));
 
+        return textView;
+    }
+
+    /**
+     * Style the View.
+     *
+     * @param parameters The Parameters.
+     * @param view       The View.
+     * @see Message#styleView(MessageParameters, View)
+     */
+    @Override
+    public void styleView(MessageParameters parameters, View view) {
+        TextView textView = (TextView)view;
         if (this.getAuthor().getSource() == Source.Self) {
-            textView.setTextColor(parameters.getSentMessageTextColor());
+            TextStyle.setTextColor(textView, parameters.getSentMessageTextColor());
         } else {
-            textView.setTextColor(parameters.getReceivedMessageTextColor());
+            TextStyle.setTextColor(textView, parameters.getReceivedMessageTextColor());
         }
-
-        return textView;
+        TextStyle.setTypeface(textView, parameters.getMessageFont());
+        TextStyle.setTextSizeSp(textView, parameters.getMessageFontSizeSp());
     }
 
     /**
@@ -89,9 +103,8 @@ public final class TextMessage extends Message {
     @Override
     public void bindView(MessageParameters parameters, View view) {
         TextView textView = (TextView)view;
-        textView.setTypeface(parameters.getMessageFont());
-        textView.setTextSize(parameters.getMessageFontSizeSp());
-        textView.setText(this.message);
-        Linkify.addLinks(textView, Linkify.ALL);
+        if (TextStyle.setText(textView, this.message)) {
+            Linkify.addLinks(textView, Linkify.ALL);
+        }
     }
 }
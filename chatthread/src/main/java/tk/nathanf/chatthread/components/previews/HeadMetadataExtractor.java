@@ -0,0 +1,260 @@
+package tk.nathanf.chatthread.components.previews;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Arrays;
+
+/**
+ * Extracts preview metadata from the {@code <head>} of a page while it is streamed.
+ *
+ * Only the bytes up to {@code </head>} (or the start of {@code <body>}) are read and
+ * parsed, so for pages with Open Graph, Twitter card or description meta tags the
+ * rest of the page is never downloaded. When the head does not contain enough
+ * metadata, {@link HeadMetadataExtractor#parseDocument()} continues reading the
+ * same stream and parses the whole page.
+ */
+final class HeadMetadataExtractor {
+    /**
+     * The maximum number of bytes read while looking for the end of the head.
+     */
+    static final int BYTE_LIMIT = 64 * 1024;
+
+    /**
+     * The meta tags checked for the title, in order of preference.
+     */
+    private static final String[] TITLE_TAGS = {"og:title", "twitter:title"};
+
+    /**
+     * The meta tags checked for the description, in order of preference.
+     */
+    private static final String[] DESCRIPTION_TAGS = {
+        "og:description", "twitter:description", "description"
+    };
+
+    /**
+     * The meta tags checked for the image, in order of preference.
+     */
+    private static final String[] IMAGE_TAGS = {
+        "og:image:secure_url", "og:image:url", "og:image", "twitter:image", "twitter:image:src"
+    };
+
+    private final InputStream input;
+    private final String charset;
+    private final String baseUri;
+
+    /**
+     * The bytes read so far.
+     */
+    private byte[] head;
+
+    /**
+     * Whether or not the whole page has been read into {@link HeadMetadataExtractor#head}.
+     */
+    private boolean endOfStream = false;
+
+    private String title;
+    private String description;
+    private String imageUrl;
+
+    /**
+     * Create the extractor.
+     *
+     * @param input   The stream of the page. It is not closed by the extractor.
+     * @param charset The charset of the page, or null to detect it.
+     * @param baseUri The URL of the page, used to resolve relative URLs.
+     */
+    HeadMetadataExtractor(
+        @NonNull InputStream input, @Nullable String charset, @NonNull String baseUri
+    ) {
+        this.input = input;
+        this.charset = charset;
+        this.baseUri = baseUri;
+    }
+
+    /**
+     * Read the head of the page and extract its metadata.
+     *
+     * @throws IOException If the page could not be read.
+     */
+    void extract() throws IOException {
+        byte[] buffer = new byte[BYTE_LIMIT];
+        int length = 0;
+        while (length < buffer.length) {
+            int read = this.input.read(buffer, length, buffer.length - length);
+            if (read == -1) {
+                this.endOfStream = true;
+                break;
+            }
+
+            // Re-scan the last few bytes, the marker may be split across two reads.
+            int from = Math.max(0, length - 6);
+            length += read;
+            if (findEndOfHead(buffer, from, length) != -1) {
+                break;
+            }
+        }
+        this.head = Arrays.copyOf(buffer, length);
+
+        Document document = Jsoup.parse(
+            new ByteArrayInputStream(this.head), this.charset, this.baseUri
+        );
+
+        this.title = firstMeta(document, TITLE_TAGS);
+        if (this.title == null) {
+            String title = document.title();
+            this.title = title.trim().isEmpty() ? null : title;
+        }
+
+        this.description = firstMeta(document, DESCRIPTION_TAGS);
+
+        String image = firstMeta(document, IMAGE_TAGS);
+        if (image == null) {
+            Element link = document.select("link[rel=image_src], link[itemprop=thumbnailUrl]")
+                .first();
+            if (link != null) {
+                image = link.attr("href");
+            }
+        }
+        this.imageUrl = image == null ? null : resolve(document, image);
+    }
+
+    /**
+     * @return True if the head contained a title, a description and an image.
+     */
+    boolean isComplete() {
+        return this.title != null && this.description != null && this.imageUrl != null;
+    }
+
+    /**
+     * Parse the whole page, reading the rest of the stream after the head.
+     *
+     * @return The page.
+     * @throws IOException If the page could not be read.
+     */
+    Document parseDocument() throws IOException {
+        InputStream head = new ByteArrayInputStream(this.head);
+        return Jsoup.parse(
+            this.endOfStream ? head : new SequenceInputStream(head, this.input),
+            this.charset, this.baseUri
+        );
+    }
+
+    /**
+     * @return The title found in the head, if any.
+     */
+    @Nullable String getTitle() {
+        return title;
+    }
+
+    /**
+     * @return The description found in the head, if any.
+     */
+    @Nullable String getDescription() {
+        return description;
+    }
+
+    /**
+     * @return The absolute URL of the image found in the head, if any.
+     */
+    @Nullable String getImageUrl() {
+        return imageUrl;
+    }
+
+    /**
+     * Find the position of {@code </head>} or {@code <body} in a buffer, ignoring case.
+     *
+     * @param bytes  The buffer.
+     * @param from   The position to start searching at.
+     * @param length The number of bytes in the buffer.
+     * @return The position, or -1 if neither was found.
+     */
+    private static int findEndOfHead(byte[] bytes, int from, int length) {
+        for (int i = from; i < length; i++) {
+            if (bytes[i] != '<') {
+                continue;
+            }
+
+            if (matches(bytes, length, i + 1, "/head") || matches(bytes, length, i + 1, "body")) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Check if a buffer contains a lower case ASCII word at a position, ignoring case.
+     *
+     * @param bytes    The buffer.
+     * @param length   The number of bytes in the buffer.
+     * @param position The position.
+     * @param word     The word.
+     * @return True if the word is at the position.
+     */
+    private static boolean matches(byte[] bytes, int length, int position, String word) {
+        if (position + word.length() > length) {
+            return false;
+        }
+
+        for (int i = 0; i < word.length(); i++) {
+            int b = bytes[position + i];
+            if (b >= 'A' && b <= 'Z') {
+                b += 'a' - 'A';
+            }
+            if (b != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Retrieve the content of the first meta tag present, matching either its
+     * {@code property} or {@code name} attribute.
+     *
+     * @param document The document.
+     * @param names    The names, in order of preference.
+     * @return The content, or null if none of the tags are present.
+     */
+    private static String firstMeta(Document document, String[] names) {
+        for (String name : names) {
+            for (Element element : document.getElementsByTag("meta")) {
+                if (
+                    name.equalsIgnoreCase(element.attr("property")) ||
+                    name.equalsIgnoreCase(element.attr("name"))
+                ) {
+                    String content = element.attr("content").trim();
+                    if (!content.isEmpty()) {
+                        return content;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Resolve a possibly relative URL against the page.
+     *
+     * @param document The page.
+     * @param url      The URL.
+     * @return The absolute URL.
+     */
+    private static String resolve(Document document, String url) {
+        try {
+            return new URL(new URL(document.baseUri()), url).toString();
+        } catch (MalformedURLException e) {
+            return url;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package tk.nathanf.chatthread.components.previews;
+
+import android.graphics.BitmapFactory;
+import android.os.Process;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import tk.nathanf.chatthread.components.loading.FetchScheduler;
+import tk.nathanf.chatthread.components.loading.Http;
+import tk.nathanf.chatthread.components.loading.HttpTransport;
+import tk.nathanf.chatthread.components.loading.LoadHandle;
+import tk.nathanf.chatthread.util.LimitedInputStream;
+
+/**
+ * Picks the largest of a page's images by reading only the header of each one.
+ *
+ * Each candidate is requested and decoded with {@link BitmapFactory.Options#inJustDecodeBounds},
+ * which stops as soon as the dimensions are known, and the connection is dropped
+ * right after. At most {@link ImageProbe#MAX_CANDIDATES} images are probed per page,
+ * and at most {@link ImageProbe#CONCURRENCY} probes run at once across all pages.
+ */
+final class ImageProbe {
+    /**
+     * The maximum number of images probed for a single page.
+     */
+    static final int MAX_CANDIDATES = 16;
+
+    /**
+     * The maximum number of probes running at once.
+     */
+    static final int CONCURRENCY = 4;
+
+    /**
+     * The maximum number of bytes read from an image while looking for its dimensions.
+     * Large enough to skip past the EXIF block of a JPEG.
+     */
+    static final int BYTE_LIMIT = 64 * 1024;
+
+    /**
+     * The Executor used for probing.
+     */
+    private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+        CONCURRENCY, CONCURRENCY, 30, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(),
+        new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(@NonNull final Runnable runnable) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "chatthread-probe-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        }
+    );
+
+    static {
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    private ImageProbe() {}
+
+    /**
+     * Find the image with the most pixels.
+     *
+     * @param urls   The URLs of the candidate images, in order of preference.
+     *               Duplicates are only probed once.
+     * @param handle The handle of the load this is running in. Outstanding probes
+     *               are cancelled when the load is.
+     * @return The URL of the largest image, or null if none of them could be read.
+     */
+    static @Nullable String findLargest(
+        @NonNull List<String> urls, @NonNull final LoadHandle handle
+    ) {
+        LinkedHashSet<String> candidates = new LinkedHashSet<>();
+        for (String url : urls) {
+            if (candidates.size() >= MAX_CANDIDATES) {
+                break;
+            }
+            if (url.startsWith("http://") || url.startsWith("https://")) {
+                candidates.add(url);
+            }
+        }
+
+        List<Future<int[]>> futures = new ArrayList<>(candidates.size());
+        for (final String url : candidates) {
+            futures.add(executor.submit(new Callable<int[]>() {
+                @Override
+                public int[] call() throws InterruptedException {
+                    return probe(url, handle);
+                }
+            }));
+        }
+
+        String largest = null;
+        long largestArea = 0;
+        int index = 0;
+        try {
+            for (String url : candidates) {
+                if (handle.isCancelled()) {
+                    return null;
+                }
+
+                int[] size;
+                try {
+                    size = futures.get(index++).get();
+                } catch (ExecutionException e) {
+                    continue;
+                }
+
+                if (size != null && (long) size[0] * size[1] > largestArea) {
+                    largest = url;
+                    largestArea = (long) size[0] * size[1];
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            for (Future<int[]> future : futures) {
+                future.cancel(true);
+            }
+        }
+
+        return largest;
+    }
+
+    /**
+     * Read the dimensions of an image.
+     *
+     * @param url    The URL of the image.
+     * @param handle The handle of the load this is running in.
+     * @return The width and height, or null if the image could not be read.
+     * @throws InterruptedException If the load was cancelled while waiting to fetch the image.
+     */
+    static @Nullable int[] probe(
+        @NonNull String url, @NonNull LoadHandle handle
+    ) throws InterruptedException {
+        HttpTransport.Response response = null;
+        FetchScheduler.Permit permit = FetchScheduler.acquire(url, handle);
+        try {
+            response = Http.execute(url, Http.Resource.Image);
+            InputStream input = new LimitedInputStream(
+                Http.getBody(response, Http.Resource.Image), BYTE_LIMIT
+            );
+            try {
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inJustDecodeBounds = true;
+                BitmapFactory.decodeStream(input, null, options);
+                if (options.outWidth <= 0 || options.outHeight <= 0) {
+                    return null;
+                }
+                return new int[] {options.outWidth, options.outHeight};
+            } finally {
+                input.close();
+            }
+        } catch (IOException e) {
+            return null;
+        } finally {
+            // Drop the connection instead of draining the rest of the image.
+            if (response != null) {
+                response.close();
+            }
+            permit.release();
+        }
+    }
+}
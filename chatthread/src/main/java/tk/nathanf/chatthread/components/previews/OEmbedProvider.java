@@ -0,0 +1,86 @@
+package tk.nathanf.chatthread.components.previews;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+
+import tk.nathanf.chatthread.components.loading.Http;
+
+/**
+ * A {@link PreviewProvider} that loads metadata from an oEmbed JSON endpoint.
+ *
+ * The title and thumbnail come from the "title" and "thumbnail_url" fields, and
+ * the description from the "author_name" field, or "provider_name" if there is no author.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class OEmbedProvider implements PreviewProvider {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final String endpoint;
+    private final String[] hosts;
+
+    /**
+     * Create the provider.
+     *
+     * @param endpoint The oEmbed endpoint, ending with the query parameter the
+     *                 encoded URL is appended to, e.g. "https://example.com/oembed?url=".
+     * @param hosts    The hosts the endpoint handles.
+     */
+    public OEmbedProvider(@NonNull String endpoint, @NonNull String... hosts) {
+        this.endpoint = endpoint;
+        this.hosts = hosts.clone();
+    }
+
+    /**
+     * @return The oEmbed endpoint.
+     */
+    public @NonNull String getEndpoint() {
+        return endpoint;
+    }
+
+    @Override
+    public @NonNull String[] getHosts() {
+        return hosts.clone();
+    }
+
+    @Override
+    public @Nullable PreviewMetadata load(@NonNull String url) throws IOException {
+        byte[] data = Http.readFully(
+            this.endpoint + URLEncoder.encode(url, "UTF-8"), Http.Resource.Html
+        );
+
+        JSONObject json;
+        try {
+            json = new JSONObject(new String(data, UTF_8));
+        } catch (JSONException e) {
+            throw new IOException("Invalid oEmbed response for " + url, e);
+        }
+
+        String title = json.optString("title", "");
+        if (title.isEmpty()) {
+            return null;
+        }
+
+        String description = json.optString("author_name", "");
+        if (description.isEmpty()) {
+            description = json.optString("provider_name", url);
+        }
+
+        String imageUrl = json.optString("thumbnail_url", "");
+        return new PreviewMetadata(
+            url,
+            title,
+            description,
+            imageUrl.isEmpty() ? null : imageUrl,
+            null,
+            null,
+            System.currentTimeMillis()
+        );
+    }
+}
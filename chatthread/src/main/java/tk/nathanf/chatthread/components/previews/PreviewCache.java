@@ -0,0 +1,244 @@
+package tk.nathanf.chatthread.components.previews;
+
+import android.content.Context;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persistent cache of the metadata scraped for Preview messages.
+ *
+ * Entries are stored in the application's cache directory, so re-opening a thread
+ * full of links does not scrape the pages again. Entries older than the time-to-live
+ * are revalidated with the ETag and Last-Modified headers the page was served with.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class PreviewCache {
+    /**
+     * The name of the directory within the cache directory the entries are stored in.
+     */
+    private static final String DIRECTORY_NAME = "chatthread-previews";
+
+    /**
+     * The number of entries kept in memory.
+     */
+    private static final int MEMORY_ENTRIES = 256;
+
+    /**
+     * The shared instance.
+     */
+    private static PreviewCache instance;
+
+    /**
+     * The time, in milliseconds, for which an entry can be used without revalidating it.
+     */
+    private static volatile long timeToLive = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * The directory the entries are stored in.
+     */
+    private final File directory;
+
+    /**
+     * The entries that have been read or written most recently.
+     */
+    private final LruCache<String, PreviewMetadata> memory = new LruCache<>(MEMORY_ENTRIES);
+
+    /**
+     * Create the cache.
+     *
+     * @param directory The directory to store entries in.
+     */
+    private PreviewCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Retrieve the shared PreviewCache.
+     *
+     * @param context The Context.
+     * @return The cache.
+     */
+    public static synchronized @NonNull PreviewCache getInstance(@NonNull Context context) {
+        if (instance == null) {
+            instance = new PreviewCache(
+                new File(context.getApplicationContext().getCacheDir(), DIRECTORY_NAME)
+            );
+        }
+        return instance;
+    }
+
+    /**
+     * Set the time for which an entry can be used without revalidating it.
+     * Defaults to one day.
+     *
+     * @param duration The duration.
+     * @param unit     The unit of the duration.
+     */
+    public static void setTimeToLive(long duration, @NonNull TimeUnit unit) {
+        timeToLive = unit.toMillis(duration);
+    }
+
+    /**
+     * @return The time, in milliseconds, for which an entry can be used without revalidating it.
+     */
+    public static long getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * Check if an entry can be used without revalidating it.
+     *
+     * @param metadata The entry.
+     * @return True if the entry is within its time-to-live.
+     */
+    public boolean isFresh(@NonNull PreviewMetadata metadata) {
+        return System.currentTimeMillis() - metadata.getFetchedAt() < timeToLive;
+    }
+
+    /**
+     * Retrieve the entry for a URL, whether or not it is fresh.
+     *
+     * @param url The URL.
+     * @return The entry, or null if there is none.
+     */
+    public synchronized @Nullable PreviewMetadata get(@NonNull String url) {
+        PreviewMetadata metadata = this.memory.get(url);
+        if (metadata != null) {
+            return metadata;
+        }
+
+        File file = this.fileFor(url);
+        if (!file.exists()) {
+            return null;
+        }
+
+        Properties properties = new Properties();
+        try {
+            InputStream input = new FileInputStream(file);
+            try {
+                properties.load(input);
+            } finally {
+                input.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+
+        // Guard against the (unlikely) case of two URLs sharing a file name.
+        if (!url.equals(properties.getProperty("url"))) {
+            return null;
+        }
+
+        try {
+            metadata = new PreviewMetadata(
+                url,
+                properties.getProperty("title", url),
+                properties.getProperty("description", url),
+                properties.getProperty("imageUrl"),
+                properties.getProperty("etag"),
+                properties.getProperty("lastModified"),
+                Long.parseLong(properties.getProperty("fetchedAt", "0"))
+            );
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        this.memory.put(url, metadata);
+        return metadata;
+    }
+
+    /**
+     * Store the entry for a URL.
+     *
+     * @param metadata The entry.
+     */
+    public synchronized void put(@NonNull PreviewMetadata metadata) {
+        this.memory.put(metadata.getUrl(), metadata);
+
+        Properties properties = new Properties();
+        properties.setProperty("url", metadata.getUrl());
+        properties.setProperty("title", metadata.getTitle());
+        properties.setProperty("description", metadata.getDescription());
+        properties.setProperty("fetchedAt", String.valueOf(metadata.getFetchedAt()));
+        if (metadata.getImageUrl() != null) {
+            properties.setProperty("imageUrl", metadata.getImageUrl());
+        }
+        if (metadata.getEtag() != null) {
+            properties.setProperty("etag", metadata.getEtag());
+        }
+        if (metadata.getLastModified() != null) {
+            properties.setProperty("lastModified", metadata.getLastModified());
+        }
+
+        if (!this.directory.exists() && !this.directory.mkdirs()) {
+            return;
+        }
+
+        // Write to a temporary file first so a crash never leaves a partial entry behind.
+        File file = this.fileFor(metadata.getUrl());
+        File temporary = new File(file.getPath() + ".tmp");
+        try {
+            OutputStream output = new FileOutputStream(temporary);
+            try {
+                properties.store(output, null);
+            } finally {
+                output.close();
+            }
+            if (!temporary.renameTo(file)) {
+                temporary.delete();
+            }
+        } catch (IOException e) {
+            temporary.delete();
+        }
+    }
+
+    /**
+     * Remove every entry from the cache.
+     */
+    public synchronized void clear() {
+        this.memory.evictAll();
+        File[] files = this.directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Retrieve the file the entry for a URL is stored in.
+     *
+     * @param url The URL.
+     * @return The file.
+     */
+    private File fileFor(String url) {
+        String name;
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(url.getBytes(Charset.forName("UTF-8")));
+            StringBuilder builder = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+                builder.append(Character.forDigit(b & 0xF, 16));
+            }
+            name = builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            name = Integer.toHexString(url.hashCode());
+        }
+        return new File(this.directory, name);
+    }
+}
@@ -0,0 +1,697 @@
+package tk.nathanf.chatthread.components.previews;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.MediaMetadataRetriever;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import tk.nathanf.chatthread.components.MessageParameters;
+import tk.nathanf.chatthread.components.loading.FetchScheduler;
+import tk.nathanf.chatthread.components.loading.Http;
+import tk.nathanf.chatthread.components.loading.HttpTransport;
+import tk.nathanf.chatthread.components.loading.LoadHandle;
+import tk.nathanf.chatthread.util.Measure;
+
+/**
+ * Loads the content displayed by a Preview message from its URL.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class PreviewLoader {
+    /**
+     * The content loaded for a Preview message.
+     */
+    public static final class Result {
+        private final String title;
+        private final String description;
+        private final Bitmap image;
+
+        Result(String title, String description, Bitmap image) {
+            this.title = title;
+            this.description = description;
+            this.image = image;
+        }
+
+        /**
+         * @return The title.
+         */
+        public String getTitle() {
+            return title;
+        }
+
+        /**
+         * @return The description.
+         */
+        public String getDescription() {
+            return description;
+        }
+
+        /**
+         * @return The image, if any.
+         */
+        public @Nullable Bitmap getImage() {
+            return image;
+        }
+    }
+
+    /**
+     * The size and policy preview images are decoded with.
+     */
+    private static final class ImageTarget {
+        private final MessageParameters.DecodePolicy policy;
+        private final int width;
+        private final int height;
+
+        ImageTarget(MessageParameters.DecodePolicy policy, int width, int height) {
+            this.policy = policy;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    /**
+     * The kinds of content a URL can point to.
+     */
+    private enum ContentKind {
+        Page,
+        Image,
+        Video,
+
+        /**
+         * Anything else, such as a PDF or an archive, which has no preview.
+         */
+        Other
+    }
+
+    /**
+     * The response to fetching a URL.
+     */
+    private static final class Response {
+        private final ContentKind kind;
+        private final HeadMetadataExtractor head;
+        private final Document document;
+        private final Bitmap image;
+        private final String etag;
+        private final String lastModified;
+
+        private Response(
+            ContentKind kind,
+            @Nullable HeadMetadataExtractor head,
+            @Nullable Document document,
+            @Nullable Bitmap image,
+            @Nullable String etag,
+            @Nullable String lastModified
+        ) {
+            this.kind = kind;
+            this.head = head;
+            this.document = document;
+            this.image = image;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * The number of bytes read from the start of a response to detect its content
+     * when the server does not say what it is.
+     */
+    private static final int SNIFF_LENGTH = 16;
+
+    /**
+     * The description displayed for URLs that point directly to an image or video.
+     */
+    private static final String MEDIA_DESCRIPTION = "Tap to open in browser";
+
+    private PreviewLoader() {}
+
+    /**
+     * Load the content for a URL. The metadata of pages is read from the {@link PreviewCache}
+     * when possible, and pages are only scraped again once their cache entry has expired and
+     * failed revalidation. Links to sites with a registered {@link PreviewProvider} have
+     * their metadata loaded by the provider instead of scraping the page.
+     *
+     * @param context      The Context.
+     * @param url          The URL.
+     * @param handle       The handle of the load this is running in.
+     * @param decodePolicy The policy to decode images with.
+     *
+     * @return The result, or null if the load was cancelled.
+     * @throws Exception If the content could not be loaded.
+     */
+    public static @Nullable Result load(
+        @NonNull Context context,
+        @NonNull String url,
+        @NonNull LoadHandle handle,
+        @NonNull MessageParameters.DecodePolicy decodePolicy
+    ) throws Exception {
+        PreviewCache cache = PreviewCache.getInstance(context);
+        ImageTarget target = new ImageTarget(
+            decodePolicy,
+            context.getResources().getDisplayMetrics().widthPixels,
+            (int) Measure.dpToPx(MessageParameters.PREVIEW_IMAGE_HEIGHT_DP, context)
+        );
+        PreviewMetadata cached = cache.get(url);
+        if (cached != null && cache.isFresh(cached)) {
+            return fromMetadata(cached, handle, target);
+        }
+
+        if (handle.isCancelled()) {
+            return null;
+        }
+
+        PreviewMetadata provided = loadFromProvider(url, handle);
+        if (provided != null) {
+            cache.put(provided);
+            return fromMetadata(provided, handle, target);
+        }
+
+        Response response = fetch(url, cached, handle, target);
+        if (response == null) {
+            PreviewMetadata revalidated = cached.withFetchedAt(System.currentTimeMillis());
+            cache.put(revalidated);
+            return fromMetadata(revalidated, handle, target);
+        }
+
+        switch (response.kind) {
+            case Video:
+                Bitmap frame = loadVideoFrame(url, handle, target);
+                return handle.isCancelled()
+                    ? null
+                    : new Result(getFileName(url), MEDIA_DESCRIPTION, frame);
+            case Image:
+                return new Result(getFileName(url), MEDIA_DESCRIPTION, response.image);
+            case Other:
+                return new Result(getFileName(url), MEDIA_DESCRIPTION, null);
+            default:
+                return scrape(cache, url, response, handle, target);
+        }
+    }
+
+    /**
+     * Load the metadata for a URL from the {@link PreviewProvider}s registered for its
+     * host, skipping the page entirely. Providers that fail are skipped.
+     *
+     * @param url    The URL.
+     * @param handle The handle of the load this is running in.
+     * @return The metadata, or null if no provider handled the URL.
+     * @throws InterruptedException If the load was cancelled while waiting to fetch the URL.
+     */
+    private static PreviewMetadata loadFromProvider(
+        String url, LoadHandle handle
+    ) throws InterruptedException {
+        for (PreviewProvider provider : PreviewProviders.find(url)) {
+            if (handle.isCancelled()) {
+                return null;
+            }
+
+            FetchScheduler.Permit permit = FetchScheduler.acquire(url, handle);
+            try {
+                PreviewMetadata metadata = provider.load(url);
+                if (metadata != null) {
+                    return metadata;
+                }
+            } catch (IOException | RuntimeException ignored) {
+                // Fall back to the next provider, then to the page.
+            } finally {
+                permit.release();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Fetch a URL and read it according to its content. Pages have their metadata
+     * read, and the whole page is only parsed if its head does not contain all of
+     * the metadata. Images are decoded at preview size. Videos and other files are not
+     * read at all, the connection is dropped as soon as it is known what they are.
+     *
+     * The content is detected from the Content-Type header, or from the first bytes
+     * of the response if the header is missing or too generic. The body is limited to
+     * the maximum size of the kind of content it turned out to be.
+     *
+     * @param url    The URL.
+     * @param cached The expired cache entry for the page, used to revalidate it.
+     * @param handle The handle of the load this is running in.
+     * @param target The size and policy to decode images with.
+     * @return The response, or null if the cache entry was revalidated.
+     * @throws IOException          If the URL could not be read.
+     * @throws InterruptedException If the load was cancelled while waiting to fetch the URL.
+     */
+    private static Response fetch(
+        String url, @Nullable PreviewMetadata cached, LoadHandle handle, ImageTarget target
+    ) throws IOException, InterruptedException {
+        Map<String, String> headers = new HashMap<>();
+        if (cached != null && cached.getEtag() != null) {
+            headers.put("If-None-Match", cached.getEtag());
+        }
+        if (cached != null && cached.getLastModified() != null) {
+            headers.put("If-Modified-Since", cached.getLastModified());
+        }
+
+        FetchScheduler.Permit permit = FetchScheduler.acquire(url, handle);
+        HttpTransport.Response response = null;
+        try {
+            response = Http.execute(url, headers, Http.Resource.Html);
+            if (cached != null && response.getCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                return null;
+            }
+
+            String contentType = response.getHeader("Content-Type");
+            ContentKind kind = getContentKind(contentType);
+            if (kind == ContentKind.Video || kind == ContentKind.Other) {
+                return new Response(kind, null, null, null, null, null);
+            }
+
+            // Unknown content is opened with the largest limit until it has been sniffed.
+            InputStream input = Http.getBody(
+                response, kind == ContentKind.Page ? Http.Resource.Html : Http.Resource.Image
+            );
+            try {
+                if (kind == null) {
+                    input = new BufferedInputStream(input);
+                    kind = sniffContentKind(input);
+                    if (kind == ContentKind.Video || kind == ContentKind.Other) {
+                        return new Response(kind, null, null, null, null, null);
+                    } else if (kind == ContentKind.Page) {
+                        input = Http.limit(response, input, Http.Resource.Html);
+                    }
+                }
+
+                if (kind == ContentKind.Image) {
+                    byte[] data = Http.readFully(response, input);
+                    return new Response(
+                        kind, null, null, decodeSampled(data, target), null, null
+                    );
+                }
+
+                HeadMetadataExtractor head = new HeadMetadataExtractor(
+                    input, getCharset(contentType), response.getUrl()
+                );
+                head.extract();
+                return new Response(
+                    ContentKind.Page,
+                    head,
+                    head.isComplete() ? null : head.parseDocument(),
+                    null,
+                    response.getHeader("ETag"),
+                    response.getHeader("Last-Modified")
+                );
+            } finally {
+                input.close();
+            }
+        } finally {
+            if (response != null) {
+                response.close();
+            }
+            permit.release();
+        }
+    }
+
+    /**
+     * Build the result for cached metadata, loading the image it refers to.
+     *
+     * @param metadata The metadata.
+     * @param handle   The handle of the load this is running in.
+     * @param target   The size and policy to decode the image with.
+     * @return The result, or null if the load was cancelled.
+     * @throws InterruptedException If the load was cancelled while fetching the image.
+     */
+    private static Result fromMetadata(
+        PreviewMetadata metadata, LoadHandle handle, ImageTarget target
+    ) throws InterruptedException {
+        Bitmap image = null;
+        if (metadata.getImageUrl() != null && !handle.isCancelled()) {
+            image = decodeImage(metadata.getImageUrl(), handle, target);
+        }
+
+        if (handle.isCancelled()) {
+            return null;
+        }
+
+        return new Result(metadata.getTitle(), metadata.getDescription(), image);
+    }
+
+    /**
+     * Load a frame from a video, scaled to the size it is displayed at.
+     *
+     * @param url    The URL of the video.
+     * @param handle The handle of the load this is running in.
+     * @param target The size to scale the frame to.
+     * @return The frame, or null if it could not be loaded.
+     * @throws InterruptedException If the load was cancelled while waiting to fetch the video.
+     */
+    private static Bitmap loadVideoFrame(
+        String url, LoadHandle handle, ImageTarget target
+    ) throws InterruptedException {
+        MediaMetadataRetriever mediaMetadataRetriever = null;
+        FetchScheduler.Permit permit = FetchScheduler.acquire(url, handle);
+        try {
+            mediaMetadataRetriever = new MediaMetadataRetriever();
+            mediaMetadataRetriever.setDataSource(url, new HashMap<String, String>());
+
+            int width = parseInt(mediaMetadataRetriever.extractMetadata(
+                MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH
+            ));
+            int height = parseInt(mediaMetadataRetriever.extractMetadata(
+                MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT
+            ));
+
+            // Scale the frame down to just cover the preview, it is displayed center cropped.
+            float scale = width > 0 && height > 0 && target.width > 0 && target.height > 0
+                ? Math.min(1, Math.max(
+                    (float) target.width / width, (float) target.height / height
+                ))
+                : 1;
+            int scaledWidth = Math.max(1, Math.round(width * scale));
+            int scaledHeight = Math.max(1, Math.round(height * scale));
+
+            if (scale < 1 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+                return mediaMetadataRetriever.getScaledFrameAtTime(
+                    -1, MediaMetadataRetriever.OPTION_CLOSEST_SYNC, scaledWidth, scaledHeight
+                );
+            }
+
+            Bitmap frame = mediaMetadataRetriever.getFrameAtTime();
+            if (frame != null && scale < 1) {
+                Bitmap scaled = Bitmap.createScaledBitmap(frame, scaledWidth, scaledHeight, true);
+                if (scaled != frame) {
+                    frame.recycle();
+                }
+                frame = scaled;
+            }
+            return frame;
+        } catch (Exception ignored) {
+            return null;
+        } finally {
+            if (mediaMetadataRetriever != null) {
+                mediaMetadataRetriever.release();
+            }
+            permit.release();
+        }
+    }
+
+    /**
+     * Scrape the title, description and image for a page and store them in the cache.
+     *
+     * The metadata in the head of the page is used when it is complete. Otherwise the
+     * whole page is parsed to fill in what is missing: the title, the description from
+     * the body text and the largest image on the page. Only the headers of the
+     * candidate images are read to find the largest one, and only that one is decoded.
+     *
+     * @param cache  The cache.
+     * @param url    The URL of the page.
+     * @param page   The response for the page.
+     * @param handle The handle of the load this is running in.
+     * @param target The size and policy to decode the image with.
+     * @return The result, or null if the load was cancelled.
+     * @throws InterruptedException If the load was cancelled while fetching an image.
+     */
+    private static Result scrape(
+        PreviewCache cache, String url, Response page, LoadHandle handle, ImageTarget target
+    ) throws InterruptedException {
+        String title = page.head.getTitle();
+        String description = page.head.getDescription();
+        String imageUrl = page.head.getImageUrl();
+
+        Document document = page.document;
+        if (document != null) {
+            if (handle.isCancelled()) {
+                return null;
+            }
+
+            if (imageUrl == null) {
+                List<String> candidates = new ArrayList<>();
+                for (Element element : document.select("img[src]")) {
+                    candidates.add(element.absUrl("src"));
+                }
+                imageUrl = ImageProbe.findLargest(candidates, handle);
+            }
+
+            if (title == null) {
+                title = document.title();
+            }
+
+            if (description == null && document.body() != null) {
+                description = document.body().text();
+            }
+        }
+
+        if (title == null || title.trim().length() < 1) {
+            title = url;
+        }
+
+        if (title.equals(url) || description == null) {
+            description = url;
+        }
+
+        Bitmap image = null;
+        if (imageUrl != null && !handle.isCancelled()) {
+            image = decodeImage(imageUrl, handle, target);
+        }
+
+        cache.put(new PreviewMetadata(
+            url, title, description, imageUrl, page.etag, page.lastModified,
+            System.currentTimeMillis()
+        ));
+
+        if (handle.isCancelled()) {
+            return null;
+        }
+
+        return new Result(title, description, image);
+    }
+
+    /**
+     * Download and decode an image, subsampled to the size it is displayed at.
+     *
+     * @param url    The URL of the image.
+     * @param handle The handle of the load this is running in.
+     * @param target The size and policy to decode the image with.
+     * @return The image, or null if it could not be loaded.
+     * @throws InterruptedException If the load was cancelled while waiting to fetch the image.
+     */
+    private static Bitmap decodeImage(
+        String url, LoadHandle handle, ImageTarget target
+    ) throws InterruptedException {
+        byte[] data;
+        FetchScheduler.Permit permit = FetchScheduler.acquire(url, handle);
+        try {
+            data = Http.readFully(url, Http.Resource.Image);
+        } catch (IOException e) {
+            return null;
+        } finally {
+            permit.release();
+        }
+
+        return decodeSampled(data, target);
+    }
+
+    /**
+     * Decode an image, subsampled to the size it is displayed at.
+     *
+     * @param data   The encoded image.
+     * @param target The size and policy to decode the image with.
+     * @return The image, or null if it could not be decoded.
+     */
+    private static Bitmap decodeSampled(byte[] data, ImageTarget target) {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, bounds);
+
+        BitmapFactory.Options options = target.policy.toOptions();
+        options.inSampleSize = getSampleSize(
+            bounds.outWidth, bounds.outHeight, target.width, target.height
+        );
+        return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+    }
+
+    /**
+     * Calculate the largest power of two an image can be subsampled by while still
+     * covering the area it is displayed in.
+     *
+     * @param width        The width of the image.
+     * @param height       The height of the image.
+     * @param targetWidth  The width of the area the image is displayed in.
+     * @param targetHeight The height of the area the image is displayed in.
+     * @return The sample size.
+     */
+    static int getSampleSize(int width, int height, int targetWidth, int targetHeight) {
+        int sampleSize = 1;
+        if (targetWidth <= 0 || targetHeight <= 0) {
+            return sampleSize;
+        }
+
+        while (
+            width / (sampleSize * 2) >= targetWidth &&
+            height / (sampleSize * 2) >= targetHeight
+        ) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Detect the kind of content from a Content-Type header.
+     *
+     * @param contentType The Content-Type header.
+     * @return The kind, or null if the header is missing or does not say.
+     */
+    private static @Nullable ContentKind getContentKind(@Nullable String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+
+        String type = contentType.split(";")[0].trim().toLowerCase(Locale.US);
+        if (type.startsWith("video/")) {
+            return ContentKind.Video;
+        } else if (type.startsWith("image/")) {
+            return ContentKind.Image;
+        } else if (type.isEmpty() || type.endsWith("/octet-stream")) {
+            return null;
+        } else if (
+            type.startsWith("text/") || type.endsWith("/xml") || type.endsWith("+xml")
+        ) {
+            // Text is most likely a page, possibly served with an unusual type.
+            return ContentKind.Page;
+        }
+
+        return ContentKind.Other;
+    }
+
+    /**
+     * Detect the kind of content from the first bytes of a response. The stream
+     * is reset to where it started.
+     *
+     * @param input The response, which must support marking.
+     * @return The kind. Unrecognised content is treated as a page if it looks like
+     *         text, and as having no preview otherwise.
+     * @throws IOException If the response could not be read.
+     */
+    private static ContentKind sniffContentKind(InputStream input) throws IOException {
+        byte[] bytes = new byte[SNIFF_LENGTH];
+        input.mark(SNIFF_LENGTH);
+        int length = 0;
+        while (length < bytes.length) {
+            int read = input.read(bytes, length, bytes.length - length);
+            if (read == -1) {
+                break;
+            }
+            length += read;
+        }
+        input.reset();
+
+        // MP4, MOV and 3GP files start with an "ftyp" box, WebM and MKV with an EBML header.
+        boolean ftyp = length >= 8 &&
+            bytes[4] == 'f' && bytes[5] == 't' && bytes[6] == 'y' && bytes[7] == 'p';
+        boolean ebml = length >= 4 &&
+            (bytes[0] & 0xFF) == 0x1A && (bytes[1] & 0xFF) == 0x45 &&
+            (bytes[2] & 0xFF) == 0xDF && (bytes[3] & 0xFF) == 0xA3;
+        if (ftyp || ebml) {
+            return ContentKind.Video;
+        }
+
+        String type = URLConnection.guessContentTypeFromStream(input);
+        if (type != null && type.startsWith("image/")) {
+            return ContentKind.Image;
+        }
+
+        return isText(bytes, length) ? ContentKind.Page : ContentKind.Other;
+    }
+
+    /**
+     * Check whether the first bytes of a response look like text. Control characters
+     * other than whitespace only appear in binary files, bytes above 0x7F are allowed
+     * as they may be part of a UTF-8 sequence.
+     *
+     * @param bytes  The bytes.
+     * @param length The number of bytes read.
+     * @return True if the bytes look like text.
+     */
+    private static boolean isText(byte[] bytes, int length) {
+        for (int i = 0; i < length; i++) {
+            int b = bytes[i] & 0xFF;
+            boolean control = b < 0x20 && b != '\t' && b != '\n' && b != '\r' && b != '\f';
+            if (control || b == 0x7F) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Retrieve the name of the file a URL points to.
+     *
+     * @param url The URL.
+     * @return The file name, or the URL if it has none.
+     */
+    private static String getFileName(String url) {
+        try {
+            String path = new URI(url).getPath();
+            if (path != null) {
+                String name = path.substring(path.lastIndexOf("/") + 1);
+                if (!name.isEmpty()) {
+                    return name;
+                }
+            }
+        } catch (URISyntaxException ignored) {}
+        return url;
+    }
+
+    /**
+     * Parse an integer, treating anything that is not one as zero.
+     *
+     * @param value The value.
+     * @return The integer.
+     */
+    private static int parseInt(@Nullable String value) {
+        if (value == null) {
+            return 0;
+        }
+
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Retrieve the charset from a Content-Type header.
+     *
+     * @param contentType The Content-Type header.
+     * @return The charset, or null if the header does not specify one.
+     */
+    static @Nullable String getCharset(@Nullable String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+
+        for (String parameter : contentType.split(";")) {
+            parameter = parameter.trim();
+            if (parameter.regionMatches(true, 0, "charset=", 0, 8)) {
+                return parameter.substring(8).replace("\"", "").trim();
+            }
+        }
+
+        return null;
+    }
+}
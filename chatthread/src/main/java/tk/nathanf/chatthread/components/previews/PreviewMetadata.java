@@ -0,0 +1,135 @@
+package tk.nathanf.chatthread.components.previews;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * The metadata scraped from a page to build a Preview message.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class PreviewMetadata {
+    /**
+     * The URL the metadata was scraped from.
+     */
+    private final @NonNull String url;
+
+    /**
+     * The title of the page.
+     */
+    private final @NonNull String title;
+
+    /**
+     * The description of the page.
+     */
+    private final @NonNull String description;
+
+    /**
+     * The URL of the image to display for the page, if any.
+     */
+    private final @Nullable String imageUrl;
+
+    /**
+     * The ETag the page was served with, if any.
+     */
+    private final @Nullable String etag;
+
+    /**
+     * The Last-Modified header the page was served with, if any.
+     */
+    private final @Nullable String lastModified;
+
+    /**
+     * The time at which the metadata was fetched or last revalidated, in milliseconds.
+     */
+    private final long fetchedAt;
+
+    /**
+     * Create the metadata.
+     *
+     * @param url          The URL.
+     * @param title        The title.
+     * @param description  The description.
+     * @param imageUrl     The image URL.
+     * @param etag         The ETag.
+     * @param lastModified The Last-Modified header.
+     * @param fetchedAt    The time at which the metadata was fetched.
+     */
+    public PreviewMetadata(
+        @NonNull String url,
+        @NonNull String title,
+        @NonNull String description,
+        @Nullable String imageUrl,
+        @Nullable String etag,
+        @Nullable String lastModified,
+        long fetchedAt
+    ) {
+        this.url = url;
+        this.title = title;
+        this.description = description;
+        this.imageUrl = imageUrl;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.fetchedAt = fetchedAt;
+    }
+
+    /**
+     * Create a copy of this metadata that was revalidated at a new time.
+     *
+     * @param fetchedAt The time at which the metadata was revalidated.
+     * @return The metadata.
+     */
+    public @NonNull PreviewMetadata withFetchedAt(long fetchedAt) {
+        return new PreviewMetadata(
+            url, title, description, imageUrl, etag, lastModified, fetchedAt
+        );
+    }
+
+    /**
+     * @return The URL the metadata was scraped from.
+     */
+    public @NonNull String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return The title of the page.
+     */
+    public @NonNull String getTitle() {
+        return title;
+    }
+
+    /**
+     * @return The description of the page.
+     */
+    public @NonNull String getDescription() {
+        return description;
+    }
+
+    /**
+     * @return The URL of the image to display for the page, if any.
+     */
+    public @Nullable String getImageUrl() {
+        return imageUrl;
+    }
+
+    /**
+     * @return The ETag the page was served with, if any.
+     */
+    public @Nullable String getEtag() {
+        return etag;
+    }
+
+    /**
+     * @return The Last-Modified header the page was served with, if any.
+     */
+    public @Nullable String getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return The time at which the metadata was fetched or last revalidated, in milliseconds.
+     */
+    public long getFetchedAt() {
+        return fetchedAt;
+    }
+}
@@ -0,0 +1,38 @@
+package tk.nathanf.chatthread.components.previews;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+
+/**
+ * Loads the metadata for links to a well-known site directly, without downloading
+ * and scraping the page, for example from an oEmbed endpoint or a predictable
+ * thumbnail URL.
+ *
+ * Providers are registered with {@link PreviewProviders#register(PreviewProvider)}
+ * and are only asked about URLs whose host is one of their hosts, or a subdomain of one.
+ */
+public interface PreviewProvider {
+    /**
+     * Retrieve the hosts this provider handles, without a "www." prefix.
+     * Subdomains of these hosts are handled as well.
+     *
+     * @return The hosts.
+     */
+    @NonNull String[] getHosts();
+
+    /**
+     * Load the metadata for a URL on one of this provider's hosts.
+     *
+     * This is called on a background thread, and should make its requests through
+     * {@link tk.nathanf.chatthread.components.loading.Http} so they share its timeouts,
+     * size limits and transport.
+     *
+     * @param url The URL.
+     * @return The metadata, or null if this provider does not handle the URL, in which
+     *         case the page is scraped instead.
+     * @throws IOException If the metadata could not be loaded. The page is scraped instead.
+     */
+    @Nullable PreviewMetadata load(@NonNull String url) throws IOException;
+}
@@ -0,0 +1,145 @@
+package tk.nathanf.chatthread.components.previews;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The registry of {@link PreviewProvider}s.
+ *
+ * Providers are indexed by host, so finding the provider for a URL is a few map
+ * lookups (one for the host and one for each of its parent domains) no matter
+ * how many providers are registered.
+ *
+ * YouTube and Vimeo are registered by default.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class PreviewProviders {
+    /**
+     * The providers, by host. Providers registered later come first.
+     */
+    private static final HashMap<String, List<PreviewProvider>> index = new HashMap<>();
+
+    static {
+        register(new OEmbedProvider(
+            "https://www.youtube.com/oembed?format=json&url=", "youtube.com", "youtu.be"
+        ));
+        register(new OEmbedProvider(
+            "https://vimeo.com/api/oembed.json?url=", "vimeo.com"
+        ));
+    }
+
+    private PreviewProviders() {}
+
+    /**
+     * Register a provider. When more than one provider handles a host, the one
+     * registered last is asked first.
+     *
+     * @param provider The provider.
+     */
+    public static void register(@NonNull PreviewProvider provider) {
+        synchronized (index) {
+            for (String host : provider.getHosts()) {
+                String key = host.toLowerCase(Locale.US);
+                List<PreviewProvider> providers = index.get(key);
+                if (providers == null) {
+                    providers = new ArrayList<>(1);
+                    index.put(key, providers);
+                }
+                providers.add(0, provider);
+            }
+        }
+    }
+
+    /**
+     * Unregister a provider, including the providers registered by default.
+     *
+     * @param provider The provider.
+     */
+    public static void unregister(@NonNull PreviewProvider provider) {
+        synchronized (index) {
+            for (String host : provider.getHosts()) {
+                String key = host.toLowerCase(Locale.US);
+                List<PreviewProvider> providers = index.get(key);
+                if (providers != null) {
+                    providers.remove(provider);
+                    if (providers.isEmpty()) {
+                        index.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Retrieve the providers registered for every host.
+     *
+     * @return The providers.
+     */
+    public static @NonNull List<PreviewProvider> getProviders() {
+        synchronized (index) {
+            List<PreviewProvider> providers = new ArrayList<>();
+            for (List<PreviewProvider> forHost : index.values()) {
+                for (PreviewProvider provider : forHost) {
+                    if (!providers.contains(provider)) {
+                        providers.add(provider);
+                    }
+                }
+            }
+            return providers;
+        }
+    }
+
+    /**
+     * Find the providers that handle a URL, most specific host first.
+     *
+     * @param url The URL.
+     * @return The providers, empty if there are none.
+     */
+    public static @NonNull List<PreviewProvider> find(@NonNull String url) {
+        String host = getHost(url);
+        List<PreviewProvider> found = new ArrayList<>(1);
+        if (host == null) {
+            return found;
+        }
+
+        synchronized (index) {
+            // Look up the host, then each of its parent domains.
+            String candidate = host;
+            while (true) {
+                List<PreviewProvider> providers = index.get(candidate);
+                if (providers != null) {
+                    found.addAll(providers);
+                }
+
+                int dot = candidate.indexOf('.');
+                if (dot == -1 || candidate.indexOf('.', dot + 1) == -1) {
+                    break;
+                }
+                candidate = candidate.substring(dot + 1);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Retrieve the host of a URL.
+     *
+     * @param url The URL.
+     * @return The host in lower case, or null if it could not be parsed.
+     */
+    private static @Nullable String getHost(String url) {
+        try {
+            String host = new URI(url.trim()).getHost();
+            return host == null ? null : host.toLowerCase(Locale.US);
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+}
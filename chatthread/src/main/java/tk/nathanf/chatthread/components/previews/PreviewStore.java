@@ -0,0 +1,352 @@
+package tk.nathanf.chatthread.components.previews;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.lang.ref.WeakReference;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import tk.nathanf.chatthread.components.MessageParameters;
+import tk.nathanf.chatthread.components.loading.LoadHandle;
+import tk.nathanf.chatthread.components.loading.Loader;
+
+/**
+ * Shares the loaded content of Preview messages between every message with the same URL.
+ *
+ * Messages acquire the {@link Entry} for their URL and release it once they are removed.
+ * Each entry loads its URL at most once, no matter how many messages are waiting on it,
+ * and its image is only held in memory once. An entry is dropped once every message
+ * holding it has released it.
+ *
+ * Listeners are always notified on the main thread.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class PreviewStore {
+    /**
+     * Listener notified when an entry has finished loading.
+     */
+    public interface Listener {
+        /**
+         * Called on the main thread once the entry has loaded.
+         *
+         * @param entry The entry.
+         */
+        void onLoaded(@NonNull Entry entry);
+    }
+
+    /**
+     * The shared content for a URL.
+     */
+    public static final class Entry {
+        private final String url;
+        private final String sourceUrl;
+        private int references = 0;
+        private boolean loaded = false;
+        private PreviewLoader.Result result;
+        private LoadHandle handle;
+
+        /**
+         * The listeners waiting for the load, and whether or not each is on screen.
+         */
+        private final Map<Listener, Boolean> listeners = new IdentityHashMap<>();
+
+        private Entry(String url, String sourceUrl) {
+            this.url = url;
+            this.sourceUrl = sourceUrl;
+        }
+
+        /**
+         * @return The normalized URL of this entry.
+         */
+        public @NonNull String getUrl() {
+            return url;
+        }
+
+        /**
+         * @return The URL this entry was first acquired with, which it is loaded from.
+         *         A page without a title is given this URL as its title and description.
+         */
+        public @NonNull String getSourceUrl() {
+            return sourceUrl;
+        }
+
+        /**
+         * @return True if this entry has finished loading, successfully or not.
+         */
+        public boolean isLoaded() {
+            synchronized (lock) {
+                return loaded;
+            }
+        }
+
+        /**
+         * @return The loaded content, or null if it has not loaded or could not be loaded.
+         */
+        public @Nullable PreviewLoader.Result getResult() {
+            synchronized (lock) {
+                return result;
+            }
+        }
+
+        /**
+         * Wait for this entry to load, starting the load if it is not already running.
+         * Does nothing if the entry has already loaded.
+         *
+         * @param context      The Context.
+         * @param decodePolicy The policy to decode the image with, if the load is started.
+         * @param listener     The listener to notify once the entry has loaded.
+         * @param visible      True if the listener is on screen.
+         */
+        public void load(
+            @NonNull Context context,
+            @NonNull MessageParameters.DecodePolicy decodePolicy,
+            @NonNull Listener listener,
+            boolean visible
+        ) {
+            synchronized (lock) {
+                if (this.loaded) {
+                    return;
+                }
+
+                this.listeners.put(listener, visible);
+                if (this.handle == null) {
+                    this.handle = this.start(context.getApplicationContext(), decodePolicy);
+                }
+                this.updateVisibility();
+            }
+        }
+
+        /**
+         * Set whether or not a waiting listener is on screen. The load is fetched
+         * ahead of others while any of its listeners are on screen.
+         *
+         * @param listener The listener.
+         * @param visible  True if the listener is on screen.
+         */
+        public void setVisible(@NonNull Listener listener, boolean visible) {
+            synchronized (lock) {
+                if (this.listeners.containsKey(listener)) {
+                    this.listeners.put(listener, visible);
+                    this.updateVisibility();
+                }
+            }
+        }
+
+        /**
+         * Stop waiting for this entry to load. The load is cancelled once no
+         * listeners are waiting for it.
+         *
+         * @param listener The listener.
+         */
+        public void removeListener(@NonNull Listener listener) {
+            synchronized (lock) {
+                this.listeners.remove(listener);
+                if (this.listeners.isEmpty() && this.handle != null) {
+                    this.handle.cancel();
+                    this.handle = null;
+                }
+            }
+        }
+
+        /**
+         * Start loading the URL of this entry.
+         *
+         * @param context      The application Context.
+         * @param decodePolicy The policy to decode the image with.
+         * @return The handle for the load.
+         */
+        private LoadHandle start(
+            final Context context, final MessageParameters.DecodePolicy decodePolicy
+        ) {
+            return Loader.submit(new Loader.Task() {
+                @Override
+                public void load(@NonNull final LoadHandle handle) {
+                    PreviewLoader.Result result = null;
+                    try {
+                        result = PreviewLoader.load(context, sourceUrl, handle, decodePolicy);
+                    } catch (Exception ignored) {}
+
+                    final PreviewLoader.Result loaded = result;
+                    Loader.deliver(handle, new Runnable() {
+                        @Override
+                        public void run() {
+                            Entry.this.finish(handle, loaded);
+                        }
+                    });
+                }
+            });
+        }
+
+        /**
+         * Store the loaded content and notify every waiting listener.
+         *
+         * @param handle The handle of the load that finished.
+         * @param result The content, or null if it could not be loaded.
+         */
+        private void finish(LoadHandle handle, PreviewLoader.Result result) {
+            ArrayList<Listener> waiting;
+            synchronized (lock) {
+                if (this.handle != handle) {
+                    return;
+                }
+
+                this.result = result;
+                this.loaded = true;
+                this.handle = null;
+                waiting = new ArrayList<>(this.listeners.keySet());
+                this.listeners.clear();
+            }
+
+            for (Listener listener : waiting) {
+                listener.onLoaded(this);
+            }
+        }
+
+        /**
+         * Mark the load as visible if any of its listeners are on screen.
+         * Must be called while holding the lock.
+         */
+        private void updateVisibility() {
+            if (this.handle != null) {
+                this.handle.setVisible(this.listeners.containsValue(Boolean.TRUE));
+            }
+        }
+    }
+
+    private static final Object lock = new Object();
+
+    /**
+     * The entries, by normalized URL. Entries are held weakly so that an entry whose
+     * messages were dropped without releasing it can still be garbage collected.
+     */
+    private static final HashMap<String, WeakReference<Entry>> entries = new HashMap<>();
+
+    private PreviewStore() {}
+
+    /**
+     * Acquire the entry for a URL, creating it if no other message holds it. A new
+     * entry is loaded from the URL as given, not from its normalized form.
+     * Every call must be balanced with a call to {@link PreviewStore#release(Entry)}.
+     *
+     * @param url The URL.
+     * @return The entry.
+     */
+    public static @NonNull Entry acquire(@NonNull String url) {
+        String key = normalize(url);
+        synchronized (lock) {
+            WeakReference<Entry> reference = entries.get(key);
+            Entry entry = reference == null ? null : reference.get();
+            if (entry == null) {
+                entry = new Entry(key, url.trim());
+                entries.put(key, new WeakReference<>(entry));
+            }
+            entry.references++;
+            return entry;
+        }
+    }
+
+    /**
+     * Release an entry acquired with {@link PreviewStore#acquire(String)}. Once every
+     * message holding the entry has released it, its load is cancelled and it is dropped.
+     *
+     * @param entry The entry.
+     */
+    public static void release(@NonNull Entry entry) {
+        synchronized (lock) {
+            if (--entry.references > 0) {
+                return;
+            }
+
+            if (entry.handle != null) {
+                entry.handle.cancel();
+                entry.handle = null;
+            }
+            entry.listeners.clear();
+
+            WeakReference<Entry> reference = entries.get(entry.url);
+            if (reference != null && reference.get() == entry) {
+                entries.remove(entry.url);
+            }
+        }
+    }
+
+    /**
+     * Check if two URLs share an entry, i.e. if a title or description that a page
+     * without one was given is the URL of the message displaying it.
+     *
+     * @param first  The first URL.
+     * @param second The second URL.
+     * @return True if both normalize to the same URL.
+     */
+    public static boolean isSameUrl(@Nullable String first, @Nullable String second) {
+        if (first == null || second == null) {
+            return false;
+        }
+
+        if (first.equals(second)) {
+            return true;
+        }
+
+        // Only parse strings that could be URLs, titles are compared on every bind.
+        return first.contains("://") && second.contains("://") &&
+            normalize(first).equals(normalize(second));
+    }
+
+    /**
+     * Normalize a URL so that equivalent URLs share an entry: the scheme and host are
+     * lower cased, default ports and fragments are removed and an empty path becomes "/".
+     *
+     * @param url The URL.
+     * @return The normalized URL, or the URL itself if it could not be parsed.
+     */
+    public static @NonNull String normalize(@NonNull String url) {
+        String trimmed = url.trim();
+        try {
+            URI uri = new URI(trimmed);
+            String scheme = uri.getScheme();
+            String host = uri.getHost();
+            if (scheme == null || host == null) {
+                return trimmed;
+            }
+
+            scheme = scheme.toLowerCase(Locale.US);
+            int port = uri.getPort();
+            if (
+                (port == 80 && scheme.equals("http")) ||
+                (port == 443 && scheme.equals("https"))
+            ) {
+                port = -1;
+            }
+
+            String path = uri.getRawPath();
+            if (path == null || path.isEmpty()) {
+                path = "/";
+            }
+
+            StringBuilder builder = new StringBuilder()
+                .append(scheme).append("://");
+            if (uri.getRawUserInfo() != null) {
+                builder.append(uri.getRawUserInfo()).append('@');
+            }
+            builder.append(host.toLowerCase(Locale.US));
+            if (port != -1) {
+                builder.append(':').append(port);
+            }
+            builder.append(path);
+            if (uri.getRawQuery() != null) {
+                builder.append('?').append(uri.getRawQuery());
+            }
+            return builder.toString();
+        } catch (URISyntaxException e) {
+            return trimmed;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package tk.nathanf.chatthread.util;
+
+import android.graphics.Bitmap;
+
+/**
+ * Utility class for decoding BlurHash strings into small placeholder Bitmaps.
+ *
+ * A BlurHash is a compact (usually 20-30 character) representation of an image
+ * that can be sent alongside its URL and decoded instantly, before the image
+ * itself has been downloaded.
+ *
+ * @see <a href="https://blurha.sh">blurha.sh</a>
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class BlurHash {
+    /**
+     * The Base83 alphabet used by BlurHash.
+     */
+    private static final String CHARACTERS =
+        "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz#$%*+,-.:;=?@[]^_{|}~";
+
+    /**
+     * Decode a BlurHash into a Bitmap.
+     *
+     * @param hash   The BlurHash.
+     * @param width  The width of the resulting Bitmap. This should be small, i.e. 32.
+     * @param height The height of the resulting Bitmap. This should be small, i.e. 32.
+     *
+     * @return The decoded Bitmap.
+     * @throws IllegalArgumentException If the hash is not a valid BlurHash.
+     */
+    public static Bitmap decode(String hash, int width, int height) {
+        if (hash == null || hash.length() < 6) {
+            throw new IllegalArgumentException("The BlurHash must be at least 6 characters.");
+        }
+
+        int sizeFlag = decode83(hash, 0, 1);
+        int numY = (sizeFlag / 9) + 1;
+        int numX = (sizeFlag % 9) + 1;
+        if (hash.length() != 4 + 2 * numX * numY) {
+            throw new IllegalArgumentException("The BlurHash length does not match its size flag.");
+        }
+
+        float maxValue = (decode83(hash, 1, 2) + 1) / 166f;
+        float[][] colors = new float[numX * numY][];
+        colors[0] = decodeDc(decode83(hash, 2, 6));
+        for (int i = 1; i < colors.length; i++) {
+            colors[i] = decodeAc(decode83(hash, 4 + i * 2, 6 + i * 2), maxValue);
+        }
+
+        // Pre-compute the cosine bases so the inner loop is only multiplications.
+        double[] cosX = new double[width * numX];
+        for (int x = 0; x < width; x++) {
+            for (int i = 0; i < numX; i++) {
+                cosX[x * numX + i] = Math.cos(Math.PI * x * i / width);
+            }
+        }
+        double[] cosY = new double[height * numY];
+        for (int y = 0; y < height; y++) {
+            for (int j = 0; j < numY; j++) {
+                cosY[y * numY + j] = Math.cos(Math.PI * y * j / height);
+            }
+        }
+
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                float r = 0, g = 0, b = 0;
+                for (int j = 0; j < numY; j++) {
+                    for (int i = 0; i < numX; i++) {
+                        float basis = (float) (cosX[x * numX + i] * cosY[y * numY + j]);
+                        float[] color = colors[j * numX + i];
+                        r += color[0] * basis;
+                        g += color[1] * basis;
+                        b += color[2] * basis;
+                    }
+                }
+                pixels[y * width + x] = 0xFF000000
+                    | (linearToSrgb(r) << 16)
+                    | (linearToSrgb(g) << 8)
+                    | linearToSrgb(b);
+            }
+        }
+
+        return Bitmap.createBitmap(pixels, width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * Decode a Base83 encoded integer.
+     *
+     * @param value The string.
+     * @param from  The start index.
+     * @param to    The end index.
+     * @return The decoded integer.
+     */
+    private static int decode83(String value, int from, int to) {
+        int result = 0;
+        for (int i = from; i < to; i++) {
+            int index = CHARACTERS.indexOf(value.charAt(i));
+            if (index < 0) {
+                throw new IllegalArgumentException(
+                    "Invalid BlurHash character '" + value.charAt(i) + "'."
+                );
+            }
+            result = result * 83 + index;
+        }
+        return result;
+    }
+
+    /**
+     * Decode the average color component.
+     *
+     * @param value The encoded value.
+     * @return The linear RGB color.
+     */
+    private static float[] decodeDc(int value) {
+        return new float[] {
+            srgbToLinear(value >> 16),
+            srgbToLinear((value >> 8) & 255),
+            srgbToLinear(value & 255)
+        };
+    }
+
+    /**
+     * Decode an AC color component.
+     *
+     * @param value    The encoded value.
+     * @param maxValue The maximum AC value.
+     * @return The linear RGB color.
+     */
+    private static float[] decodeAc(int value, float maxValue) {
+        return new float[] {
+            signedPow2((value / (19 * 19) - 9) / 9f) * maxValue,
+            signedPow2(((value / 19) % 19 - 9) / 9f) * maxValue,
+            signedPow2((value % 19 - 9) / 9f) * maxValue
+        };
+    }
+
+    private static float signedPow2(float value) {
+        return Math.copySign(value * value, value);
+    }
+
+    private static float srgbToLinear(int value) {
+        float v = value / 255f;
+        return v <= 0.04045f ? v / 12.92f : (float) Math.pow((v + 0.055f) / 1.055f, 2.4f);
+    }
+
+    private static int linearToSrgb(float value) {
+        float v = Math.max(0f, Math.min(1f, value));
+        if (v <= 0.0031308f) {
+            return (int) (v * 12.92f * 255f + 0.5f);
+        }
+        return (int) ((1.055f * (float) Math.pow(v, 1 / 2.4f) - 0.055f) * 255f + 0.5f);
+    }
+}
@@ -4,6 +4,7 @@ import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
+import android.os.Build;
 
 /**
  * Utility class for managing Images.
@@ -42,4 +43,24 @@ public class ImageUtil {
         drawable.draw(canvas);
         return bitmap;
     }
+
+    /**
+     * Retrieve a Bitmap whose pixels can be read by software, i.e. to compress or save it.
+     * Bitmaps decoded with {@link Bitmap.Config#HARDWARE} are copied, any other Bitmap
+     * is returned as-is.
+     *
+     * @param bitmap The Bitmap.
+     * @return       A Bitmap that supports software access.
+     */
+    public static Bitmap ensureSoftware(Bitmap bitmap) {
+        if (
+            bitmap != null &&
+            Build.VERSION.SDK_INT >= Build.VERSION_CODES.O &&
+            bitmap.getConfig() == Bitmap.Config.HARDWARE
+        ) {
+            return bitmap.copy(Bitmap.Config.ARGB_8888, false);
+        }
+
+        return bitmap;
+    }
 }
@@ -0,0 +1,72 @@
+package tk.nathanf.chatthread.util;
+
+import androidx.annotation.NonNull;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An InputStream that reports the end of the stream once a number of bytes have been read.
+ */
+@SuppressWarnings("unused")
+public class LimitedInputStream extends FilterInputStream {
+    /**
+     * The number of bytes that may still be read.
+     */
+    private long remaining;
+
+    /**
+     * Create the stream.
+     *
+     * @param input The stream to read from.
+     * @param limit The maximum number of bytes to read.
+     */
+    public LimitedInputStream(@NonNull InputStream input, long limit) {
+        super(input);
+        this.remaining = limit;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (remaining <= 0) {
+            return -1;
+        }
+
+        int read = super.read();
+        if (read != -1) {
+            remaining--;
+        }
+        return read;
+    }
+
+    @Override
+    public int read(@NonNull byte[] buffer, int offset, int length) throws IOException {
+        if (remaining <= 0) {
+            return -1;
+        }
+
+        int read = super.read(buffer, offset, (int) Math.min(length, remaining));
+        if (read != -1) {
+            remaining -= read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long count) throws IOException {
+        long skipped = super.skip(Math.min(count, remaining));
+        remaining -= skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(super.available(), remaining);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+}
@@ -0,0 +1,98 @@
+package tk.nathanf.chatthread.util;
+
+import android.content.res.ColorStateList;
+import android.graphics.Typeface;
+import android.text.TextUtils;
+import android.util.TypedValue;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+/**
+ * Utility class for styling TextViews that are re-bound often.
+ *
+ * Each setter compares the value with the one the View already has and skips the
+ * call when it is unchanged, so that re-binding a row with the same content and
+ * style does not request a new layout pass.
+ */
+@SuppressWarnings("unused")
+public class TextStyle {
+    /**
+     * Set the Typeface of a TextView, if it has changed.
+     *
+     * @param textView The TextView.
+     * @param typeface The Typeface.
+     */
+    public static void setTypeface(TextView textView, Typeface typeface) {
+        if (textView.getTypeface() != typeface) {
+            textView.setTypeface(typeface);
+        }
+    }
+
+    /**
+     * Set the text size of a TextView, if it has changed.
+     *
+     * @param textView  The TextView.
+     * @param valueInSp The size in sp.
+     */
+    public static void setTextSizeSp(TextView textView, float valueInSp) {
+        float px = TypedValue.applyDimension(
+            TypedValue.COMPLEX_UNIT_SP,
+            valueInSp,
+            textView.getResources().getDisplayMetrics()
+        );
+        if (textView.getTextSize() != px) {
+            textView.setTextSize(TypedValue.COMPLEX_UNIT_PX, px);
+        }
+    }
+
+    /**
+     * Set the text color of a TextView, if it has changed.
+     *
+     * @param textView The TextView.
+     * @param color    The color.
+     */
+    public static void setTextColor(TextView textView, int color) {
+        ColorStateList colors = textView.getTextColors();
+        if (colors == null || colors.isStateful() || colors.getDefaultColor() != color) {
+            textView.setTextColor(color);
+        }
+    }
+
+    /**
+     * Set the text of a TextView, if it has changed.
+     *
+     * @param textView The TextView.
+     * @param text     The text.
+     * @return True if the text was set, false if the TextView already displayed it.
+     */
+    public static boolean setText(TextView textView, CharSequence text) {
+        if (TextUtils.equals(textView.getText(), text)) {
+            return false;
+        }
+
+        textView.setText(text);
+        return true;
+    }
+
+    /**
+     * Set the margins of a View, requesting a layout only if they have changed.
+     *
+     * @param view   The View.
+     * @param left   The left margin.
+     * @param top    The top margin.
+     * @param right  The right margin.
+     * @param bottom The bottom margin.
+     */
+    public static void setMargins(View view, int left, int top, int right, int bottom) {
+        ViewGroup.MarginLayoutParams params =
+            (ViewGroup.MarginLayoutParams) view.getLayoutParams();
+        if (
+            params.leftMargin != left || params.topMargin != top ||
+            params.rightMargin != right || params.bottomMargin != bottom
+        ) {
+            params.setMargins(left, top, right, bottom);
+            view.requestLayout();
+        }
+    }
+}
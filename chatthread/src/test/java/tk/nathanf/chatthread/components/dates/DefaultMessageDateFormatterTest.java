@@ -0,0 +1,122 @@
+package tk.nathanf.chatthread.components.dates;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the output of the {@link DefaultMessageDateFormatter}, with a fixed Clock.
+ */
+public class DefaultMessageDateFormatterTest {
+    private static final TimeZone ZONE = TimeZone.getTimeZone("America/New_York");
+
+    private TimeZone defaultZone;
+    private DefaultMessageDateFormatter formatter;
+
+    /**
+     * Wednesday, June 16th 2021 at 3:30 PM.
+     */
+    private final long now = time(2021, Calendar.JUNE, 16, 15, 30);
+
+    @Before
+    public void setUp() {
+        defaultZone = TimeZone.getDefault();
+        TimeZone.setDefault(ZONE);
+
+        formatter = new DefaultMessageDateFormatter(
+            "MMM d, yyyy", MessageDateFormatter.FLAG_ALL
+        );
+        formatter.setClock(new MessageDateFormatter.Clock() {
+            @Override
+            public long currentTimeMillis() {
+                return now;
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(defaultZone);
+    }
+
+    @Test
+    public void format_minutesAgo() {
+        assertEquals("Just now", format(now - 30 * 1000));
+        assertEquals("A minute ago", format(now - 90 * 1000));
+        assertEquals("2 minutes ago", format(now - 2 * 60 * 1000));
+        assertEquals("59 minutes ago", format(now - 59 * 60 * 1000));
+    }
+
+    @Test
+    public void format_today() {
+        assertEquals("Today at 2:30 PM", format(time(2021, Calendar.JUNE, 16, 14, 30)));
+        assertEquals("Today at 12:00 AM", format(time(2021, Calendar.JUNE, 16, 0, 0)));
+    }
+
+    @Test
+    public void format_yesterday() {
+        assertEquals("Yesterday at 11:59 PM", format(time(2021, Calendar.JUNE, 15, 23, 59)));
+        assertEquals("Yesterday at 9:05 AM", format(time(2021, Calendar.JUNE, 15, 9, 5)));
+    }
+
+    @Test
+    public void format_weekday() {
+        assertEquals("Sunday at 10:00 AM", format(time(2021, Calendar.JUNE, 13, 10, 0)));
+        assertEquals("Thursday at 8:15 PM", format(time(2021, Calendar.JUNE, 10, 20, 15)));
+    }
+
+    @Test
+    public void format_olderThanAWeek_usesDefaultFormat() {
+        assertEquals("Jun 9, 2021", format(time(2021, Calendar.JUNE, 9, 12, 0)));
+        assertEquals("Jan 1, 2020", format(time(2020, Calendar.JANUARY, 1, 12, 0)));
+    }
+
+    @Test
+    public void format_respectsFlags() {
+        formatter.setFlags(MessageDateFormatter.FLAG_DAYS);
+        assertEquals("Today at 3:25 PM", format(now - 5 * 60 * 1000));
+
+        formatter.setFlags(MessageDateFormatter.FLAG_MINUTES);
+        assertEquals("5 minutes ago", format(now - 5 * 60 * 1000));
+        assertEquals("Jun 15, 2021", format(time(2021, Calendar.JUNE, 15, 9, 5)));
+    }
+
+    @Test
+    public void format_usesClock() {
+        assertEquals(formatter.format(new Date(now - 90 * 1000), now),
+            formatter.format(new Date(now - 90 * 1000)));
+    }
+
+    /**
+     * Format a time with the formatter, relative to the time of its Clock.
+     *
+     * @param time The time, in milliseconds since the epoch.
+     * @return The formatted time.
+     */
+    private String format(long time) {
+        return formatter.format(new Date(time), formatter.now());
+    }
+
+    /**
+     * Retrieve a local time in the time zone of the test.
+     *
+     * @param year   The year.
+     * @param month  The month, i.e. {@link Calendar#JUNE}.
+     * @param day    The day of the month.
+     * @param hour   The hour of the day.
+     * @param minute The minute.
+     * @return The time, in milliseconds since the epoch.
+     */
+    static long time(int year, int month, int day, int hour, int minute) {
+        Calendar calendar = Calendar.getInstance(ZONE);
+        calendar.clear();
+        calendar.set(year, month, day, hour, minute);
+        return calendar.getTimeInMillis();
+    }
+}
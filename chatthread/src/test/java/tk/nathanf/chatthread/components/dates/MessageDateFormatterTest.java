@@ -0,0 +1,145 @@
+package tk.nathanf.chatthread.components.dates;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+import static tk.nathanf.chatthread.components.dates.DefaultMessageDateFormatterTest.time;
+
+/**
+ * Tests for the calendar days computed by {@link MessageDateFormatter}.
+ */
+public class MessageDateFormatterTest {
+    private static final long MINUTE = 60 * 1000;
+
+    private TimeZone defaultZone;
+    private MessageDateFormatter formatter;
+
+    @Before
+    public void setUp() {
+        defaultZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"));
+        formatter = new DefaultMessageDateFormatter("MMM d, yyyy", MessageDateFormatter.FLAG_ALL);
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(defaultZone);
+    }
+
+    @Test
+    public void getCalendarDaysAgo_aroundMidnight() {
+        long beforeMidnight = time(2021, Calendar.JUNE, 15, 23, 59);
+        long afterMidnight = time(2021, Calendar.JUNE, 16, 0, 1);
+
+        assertEquals(0, formatter.getCalendarDaysAgo(beforeMidnight, beforeMidnight));
+        assertEquals(1, formatter.getCalendarDaysAgo(beforeMidnight, afterMidnight));
+        assertEquals(0, formatter.getCalendarDaysAgo(afterMidnight, afterMidnight));
+        assertEquals(0, formatter.getCalendarDaysAgo(
+            time(2021, Calendar.JUNE, 16, 0, 0), afterMidnight
+        ));
+    }
+
+    @Test
+    public void getCalendarDaysAgo_recomputedOnceTheDayChanges() {
+        long message = time(2021, Calendar.JUNE, 15, 23, 58);
+
+        assertEquals(0, formatter.getCalendarDaysAgo(
+            message, time(2021, Calendar.JUNE, 15, 23, 59)
+        ));
+        assertEquals(1, formatter.getCalendarDaysAgo(
+            message, time(2021, Calendar.JUNE, 16, 0, 1)
+        ));
+    }
+
+    @Test
+    public void getCalendarDaysAgo_countsDaysNotHours() {
+        long now = time(2021, Calendar.JUNE, 16, 0, 30);
+
+        assertEquals(1, formatter.getCalendarDaysAgo(
+            time(2021, Calendar.JUNE, 15, 0, 45), now
+        ));
+        assertEquals(2, formatter.getCalendarDaysAgo(
+            time(2021, Calendar.JUNE, 14, 23, 45), now
+        ));
+        assertEquals(0, formatter.getCalendarDaysAgo(now + 5 * MINUTE, now));
+    }
+
+    @Test
+    public void getCalendarDaysAgo_olderThanCalendarDays() {
+        long now = time(2021, Calendar.JUNE, 16, 12, 0);
+
+        assertEquals(MessageDateFormatter.CALENDAR_DAYS, formatter.getCalendarDaysAgo(
+            time(2021, Calendar.JUNE, 9, 0, 0), now
+        ));
+        assertEquals(-1, formatter.getCalendarDaysAgo(
+            time(2021, Calendar.JUNE, 8, 23, 59), now
+        ));
+    }
+
+    @Test
+    public void getCalendarDaysAgo_springForward() {
+        // March 14th 2021 is only 23 hours long in New York.
+        long endOfShortDay = time(2021, Calendar.MARCH, 14, 23, 30);
+        assertEquals(0, formatter.getCalendarDaysAgo(
+            time(2021, Calendar.MARCH, 14, 0, 10), endOfShortDay
+        ));
+        assertEquals(1, formatter.getCalendarDaysAgo(
+            time(2021, Calendar.MARCH, 13, 23, 50), endOfShortDay
+        ));
+
+        long dayAfter = time(2021, Calendar.MARCH, 15, 0, 30);
+        assertEquals(1, formatter.getCalendarDaysAgo(
+            time(2021, Calendar.MARCH, 14, 0, 30), dayAfter
+        ));
+        assertEquals(2, formatter.getCalendarDaysAgo(
+            time(2021, Calendar.MARCH, 13, 23, 59), dayAfter
+        ));
+
+        long later = time(2021, Calendar.MARCH, 17, 12, 0);
+        assertEquals(3, formatter.getCalendarDaysAgo(
+            time(2021, Calendar.MARCH, 14, 0, 0), later
+        ));
+        assertEquals(4, formatter.getCalendarDaysAgo(
+            time(2021, Calendar.MARCH, 13, 23, 59), later
+        ));
+    }
+
+    @Test
+    public void getCalendarDaysAgo_fallBack() {
+        // November 7th 2021 is 25 hours long in New York.
+        long endOfLongDay = time(2021, Calendar.NOVEMBER, 7, 23, 30);
+        assertEquals(0, formatter.getCalendarDaysAgo(
+            time(2021, Calendar.NOVEMBER, 7, 0, 10), endOfLongDay
+        ));
+        assertEquals(1, formatter.getCalendarDaysAgo(
+            time(2021, Calendar.NOVEMBER, 6, 23, 50), endOfLongDay
+        ));
+
+        long dayAfter = time(2021, Calendar.NOVEMBER, 8, 0, 10);
+        assertEquals(1, formatter.getCalendarDaysAgo(
+            time(2021, Calendar.NOVEMBER, 7, 0, 5), dayAfter
+        ));
+        assertEquals(2, formatter.getCalendarDaysAgo(
+            time(2021, Calendar.NOVEMBER, 6, 23, 59), dayAfter
+        ));
+    }
+
+    @Test
+    public void getCalendarDaysAgo_timeZoneChange() {
+        long now = time(2021, Calendar.JUNE, 16, 2, 0);
+        long message = time(2021, Calendar.JUNE, 15, 23, 0);
+        assertEquals(1, formatter.getCalendarDaysAgo(message, now));
+
+        // In UTC, both times are on June 16th. The time zone is only checked once a
+        // minute, so the change is picked up once the clock has moved past that.
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+        now += 2 * MINUTE;
+        assertEquals(0, formatter.getCalendarDaysAgo(message, now));
+        assertEquals("UTC", formatter.getTimeZone(now).getID());
+    }
+}
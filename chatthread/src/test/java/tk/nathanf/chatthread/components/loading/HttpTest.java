@@ -0,0 +1,278 @@
+package tk.nathanf.chatthread.components.loading;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the limits {@link Http} applies to requests, through a fake {@link HttpTransport}.
+ */
+public class HttpTest {
+    private static final String URL = "https://example.com/avatar.png";
+
+    private HttpTransport defaultTransport;
+    private FakeTransport transport;
+
+    @Before
+    public void setUp() {
+        defaultTransport = Http.getTransport();
+        transport = new FakeTransport();
+        Http.setTransport(transport);
+        LoadMetrics.reset();
+    }
+
+    @After
+    public void tearDown() {
+        Http.setTransport(defaultTransport);
+        Http.setTimeouts(
+            Http.DEFAULT_CONNECT_TIMEOUT, Http.DEFAULT_READ_TIMEOUT, TimeUnit.MILLISECONDS
+        );
+        Http.setDeadline(Http.DEFAULT_DEADLINE, TimeUnit.MILLISECONDS);
+        for (Http.Resource resource : Http.Resource.values()) {
+            Http.setMaxBytes(resource, resource.getDefaultMaxBytes());
+        }
+        LoadMetrics.reset();
+    }
+
+    @Test
+    public void readFully_returnsBody() throws IOException {
+        Http.setTimeouts(2, 3, TimeUnit.SECONDS);
+        transport.response = new FakeResponse(200, new ByteArrayInputStream(bytes(10)));
+        transport.response.headers.put("Content-Length", "10");
+
+        assertArrayEquals(bytes(10), Http.readFully(URL, Http.Resource.Avatar));
+        assertEquals(URL, transport.request.getUrl());
+        assertEquals(2000, transport.request.getConnectTimeout());
+        assertEquals(3000, transport.request.getReadTimeout());
+        assertTrue(transport.response.closed);
+        assertEquals(0, LoadMetrics.getAbortCount());
+    }
+
+    @Test
+    public void getBody_unsuccessfulStatus() {
+        FakeResponse response = new FakeResponse(404, new ByteArrayInputStream(bytes(10)));
+        try {
+            Http.getBody(response, Http.Resource.Avatar);
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            assertFalse(e instanceof Http.ResponseTooLargeException);
+        }
+
+        assertFalse(response.bodyOpened);
+        assertEquals(0, LoadMetrics.getAbortCount());
+    }
+
+    @Test
+    public void getBody_declaredLengthTooLarge() {
+        Http.setMaxBytes(Http.Resource.Avatar, 100);
+        FakeResponse response = new FakeResponse(200, new ByteArrayInputStream(bytes(10)));
+        response.headers.put("Content-Length", "101");
+        try {
+            Http.getBody(response, Http.Resource.Avatar);
+            fail("Expected a ResponseTooLargeException");
+        } catch (Http.ResponseTooLargeException e) {
+            // Expected.
+        } catch (IOException e) {
+            fail("Unexpected " + e);
+        }
+
+        assertEquals(1, LoadMetrics.getAbortCount(
+            Http.Resource.Avatar, LoadMetrics.AbortReason.TooLarge
+        ));
+        assertEquals(1, LoadMetrics.getAbortCount());
+    }
+
+    @Test
+    public void readFully_streamedBodyTooLarge() {
+        Http.setMaxBytes(Http.Resource.Image, 100);
+        transport.response = new FakeResponse(200, new ByteArrayInputStream(bytes(101)));
+        try {
+            Http.readFully(URL, Http.Resource.Image);
+            fail("Expected a ResponseTooLargeException");
+        } catch (Http.ResponseTooLargeException e) {
+            // Expected.
+        } catch (IOException e) {
+            fail("Unexpected " + e);
+        }
+
+        assertTrue(transport.response.closed);
+        assertEquals(1, LoadMetrics.getAbortCount(
+            Http.Resource.Image, LoadMetrics.AbortReason.TooLarge
+        ));
+        assertEquals(1, LoadMetrics.getAbortCount());
+    }
+
+    @Test
+    public void readFully_bodyAtTheLimit() throws IOException {
+        Http.setMaxBytes(Http.Resource.Image, 100);
+        transport.response = new FakeResponse(200, new ByteArrayInputStream(bytes(100)));
+
+        assertEquals(100, Http.readFully(URL, Http.Resource.Image).length);
+        assertEquals(0, LoadMetrics.getAbortCount());
+    }
+
+    @Test
+    public void readFully_readTimeout() {
+        transport.response = new FakeResponse(200, new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new SocketTimeoutException("Read timed out");
+            }
+        });
+        try {
+            Http.readFully(URL, Http.Resource.Html);
+            fail("Expected a SocketTimeoutException");
+        } catch (SocketTimeoutException e) {
+            // Expected.
+        } catch (IOException e) {
+            fail("Unexpected " + e);
+        }
+
+        assertTrue(transport.response.closed);
+        assertEquals(1, LoadMetrics.getAbortCount(
+            Http.Resource.Html, LoadMetrics.AbortReason.ReadTimeout
+        ));
+        assertEquals(1, LoadMetrics.getAbortCount());
+    }
+
+    @Test
+    public void execute_connectTimeout() {
+        transport.failure = new HttpTransport.ConnectTimeoutException("Connect timed out");
+        try {
+            Http.readFully(URL, Http.Resource.Avatar);
+            fail("Expected a ConnectTimeoutException");
+        } catch (HttpTransport.ConnectTimeoutException e) {
+            // Expected.
+        } catch (IOException e) {
+            fail("Unexpected " + e);
+        }
+
+        assertEquals(1, LoadMetrics.getAbortCount(
+            Http.Resource.Avatar, LoadMetrics.AbortReason.ConnectTimeout
+        ));
+        assertEquals(1, LoadMetrics.getAbortCount());
+    }
+
+    @Test
+    public void readFully_deadline() {
+        Http.setDeadline(50, TimeUnit.MILLISECONDS);
+
+        // Sends a byte every 10ms, well within the read timeout.
+        transport.response = new FakeResponse(200, new InputStream() {
+            @Override
+            public int read() throws IOException {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return 0;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int read = this.read();
+                buffer[offset] = (byte) read;
+                return 1;
+            }
+        });
+        try {
+            Http.readFully(URL, Http.Resource.Html);
+            fail("Expected a DeadlineExceededException");
+        } catch (Http.DeadlineExceededException e) {
+            // Expected.
+        } catch (IOException e) {
+            fail("Unexpected " + e);
+        }
+
+        assertTrue(transport.response.closed);
+        assertEquals(1, LoadMetrics.getAbortCount(
+            Http.Resource.Html, LoadMetrics.AbortReason.Deadline
+        ));
+        assertEquals(1, LoadMetrics.getAbortCount());
+    }
+
+    /**
+     * Create a body of a specific size.
+     *
+     * @param length The size, in bytes.
+     * @return The body.
+     */
+    private static byte[] bytes(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+
+    /**
+     * A transport that returns a prepared response, or throws a prepared failure.
+     */
+    private static final class FakeTransport implements HttpTransport {
+        private FakeResponse response;
+        private IOException failure;
+        private Request request;
+
+        @Override
+        public Response execute(Request request) throws IOException {
+            this.request = request;
+            if (this.failure != null) {
+                throw this.failure;
+            }
+            return this.response;
+        }
+    }
+
+    /**
+     * A response with a prepared status, headers and body.
+     */
+    private static final class FakeResponse implements HttpTransport.Response {
+        private final int code;
+        private final InputStream body;
+        private final Map<String, String> headers = new HashMap<>();
+        private boolean bodyOpened = false;
+        private boolean closed = false;
+
+        FakeResponse(int code, InputStream body) {
+            this.code = code;
+            this.body = body;
+        }
+
+        @Override
+        public String getUrl() {
+            return URL;
+        }
+
+        @Override
+        public int getCode() {
+            return this.code;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return this.headers.get(name);
+        }
+
+        @Override
+        public InputStream getBody() {
+            this.bodyOpened = true;
+            return this.body;
+        }
+
+        @Override
+        public void close() {
+            this.closed = true;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package tk.nathanf.chatthread.components.previews;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for how the {@link PreviewStore} matches the URLs of Preview messages.
+ */
+public class PreviewStoreTest {
+    @Test
+    public void normalize() {
+        assertEquals("https://nathanf.tk/", PreviewStore.normalize("https://nathanf.tk"));
+        assertEquals("https://nathanf.tk/", PreviewStore.normalize(" HTTPS://NathanF.tk:443 "));
+        assertEquals(
+            "http://nathanf.tk/a?b=c", PreviewStore.normalize("http://nathanf.tk:80/a?b=c#d")
+        );
+        assertEquals("http://nathanf.tk:8080/", PreviewStore.normalize("http://nathanf.tk:8080"));
+        assertEquals("not a url", PreviewStore.normalize("not a url"));
+    }
+
+    @Test
+    public void isSameUrl_titlelessPageWithoutPath() {
+        // A page without a title is given the URL it was loaded from as its title and
+        // description, which may be the normalized form of the URL of the message.
+        String url = "https://nathanf.tk";
+        assertTrue(PreviewStore.isSameUrl(url, url));
+        assertTrue(PreviewStore.isSameUrl(PreviewStore.normalize(url), url));
+        assertTrue(PreviewStore.isSameUrl("https://NathanF.tk:443/#top", url));
+    }
+
+    @Test
+    public void isSameUrl_differentContent() {
+        String url = "https://nathanf.tk";
+        assertFalse(PreviewStore.isSameUrl("Nathan F", url));
+        assertFalse(PreviewStore.isSameUrl("https://nathanf.tk/about", url));
+        assertFalse(PreviewStore.isSameUrl("http://nathanf.tk", url));
+        assertFalse(PreviewStore.isSameUrl(null, url));
+        assertFalse(PreviewStore.isSameUrl(url, null));
+    }
+
+    @Test
+    public void acquire_keepsTheUrlItWasFirstAcquiredWith() {
+        PreviewStore.Entry first = PreviewStore.acquire("https://nathanf.tk");
+        PreviewStore.Entry second = PreviewStore.acquire("https://NathanF.tk/#top");
+        try {
+            assertSame(first, second);
+            assertEquals("https://nathanf.tk/", first.getUrl());
+            assertEquals("https://nathanf.tk", first.getSourceUrl());
+        } finally {
+            PreviewStore.release(first);
+            PreviewStore.release(second);
+        }
+
+        PreviewStore.Entry next = PreviewStore.acquire("https://NathanF.tk/#top");
+        try {
+            assertNotSame(first, next);
+            assertEquals("https://NathanF.tk/#top", next.getSourceUrl());
+        } finally {
+            PreviewStore.release(next);
+        }
+    }
+}